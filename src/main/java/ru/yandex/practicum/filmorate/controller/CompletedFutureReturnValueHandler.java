@@ -0,0 +1,74 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandler;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandlerComposite;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.CompletableFuture;
+
+// Уже завершенный CompletableFuture обработчика (в режиме blocking - всегда) разворачивается сразу:
+// значение обрабатывается так, как если бы метод вернул его сам, без startAsync и повторной
+// диспетчеризации запроса. Незавершенный или завершенный с ошибкой передается обычному
+// асинхронному обработчику Spring MVC
+class CompletedFutureReturnValueHandler implements HandlerMethodReturnValueHandler {
+    private final HandlerMethodReturnValueHandlerComposite handlers;
+
+    CompletedFutureReturnValueHandler(HandlerMethodReturnValueHandlerComposite handlers) {
+        this.handlers = handlers;
+    }
+
+    @Override
+    public boolean supportsReturnType(MethodParameter returnType) {
+        return CompletableFuture.class.isAssignableFrom(returnType.getParameterType());
+    }
+
+    @Override
+    public void handleReturnValue(Object returnValue, MethodParameter returnType,
+                                  ModelAndViewContainer mavContainer, NativeWebRequest webRequest) throws Exception {
+        CompletableFuture<?> future = (CompletableFuture<?>) returnValue;
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
+            handlers.handleReturnValue(returnValue, returnType, mavContainer, webRequest);
+            return;
+        }
+        Object value = future.join();
+        handlers.handleReturnValue(value, new CompletedValueParameter(returnType, value), mavContainer, webRequest);
+    }
+
+    // Тип возвращаемого значения метода без обертки CompletableFuture: ResponseEntity<Film> вместо
+    // CompletableFuture<ResponseEntity<Film>>; аннотации метода и класса остаются прежними
+    private static final class CompletedValueParameter extends MethodParameter {
+        private final Object value;
+        private final ResolvableType valueType;
+
+        private CompletedValueParameter(MethodParameter original, Object value) {
+            super(original);
+            this.value = value;
+            this.valueType = ResolvableType.forMethodParameter(original).getGeneric();
+        }
+
+        private CompletedValueParameter(CompletedValueParameter original) {
+            super(original);
+            this.value = original.value;
+            this.valueType = original.valueType;
+        }
+
+        @Override
+        public Class<?> getParameterType() {
+            return value != null ? value.getClass() : valueType.toClass();
+        }
+
+        @Override
+        public Type getGenericParameterType() {
+            return valueType.getType();
+        }
+
+        @Override
+        public CompletedValueParameter clone() {
+            return new CompletedValueParameter(this);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandler;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandlerComposite;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+public class ControllerConfiguration {
+
+    // Обработчик завершенных CompletableFuture ставится перед встроенными: иначе их забирает
+    // асинхронный обработчик Spring MVC, который запускает повторную диспетчеризацию
+    public ControllerConfiguration(RequestMappingHandlerAdapter adapter) {
+        List<HandlerMethodReturnValueHandler> handlers = new ArrayList<>(adapter.getReturnValueHandlers());
+        HandlerMethodReturnValueHandlerComposite builtIn = new HandlerMethodReturnValueHandlerComposite()
+                .addHandlers(handlers);
+        handlers.add(0, new CompletedFutureReturnValueHandler(builtIn));
+        adapter.setReturnValueHandlers(handlers);
+    }
+}
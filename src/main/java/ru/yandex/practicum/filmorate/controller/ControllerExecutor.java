@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+// Исполнитель обработчиков одного контроллера. Без пула обработчик выполняется в потоке запроса
+// и возвращает уже завершенный CompletableFuture. Если очередь пула заполнена, supply и run
+// выбрасывают TaskRejectedException, на который ErrorHandler отвечает 503
+public class ControllerExecutor {
+    private final ThreadPoolTaskExecutor pool;
+
+    ControllerExecutor(ThreadPoolTaskExecutor pool) {
+        this.pool = pool;
+    }
+
+    public <T> CompletableFuture<T> supply(Supplier<T> handler) {
+        if (pool == null) {
+            return CompletableFuture.completedFuture(handler.get());
+        }
+        return CompletableFuture.supplyAsync(handler, pool);
+    }
+
+    public CompletableFuture<Void> run(Runnable handler) {
+        return supply(() -> {
+            handler.run();
+            return null;
+        });
+    }
+
+    ThreadPoolTaskExecutor getPool() {
+        return pool;
+    }
+}
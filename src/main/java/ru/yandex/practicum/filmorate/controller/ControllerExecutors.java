@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.metrics.RequestStats;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Режим выполнения обработчиков FilmController и UserController (filmorate.async.mode):
+// blocking - в потоке Tomcat, executor - в отдельном ограниченном пуле каждого контроллера.
+// Во втором режиме медленные запросы к фильмам и пользователям занимают только потоки своего пула,
+// а потоки Tomcat быстро освобождаются и обслуживают легкие эндпоинты (/genres, /mpa) без очереди
+// Обработчики в обоих режимах возвращают CompletableFuture. В режиме blocking он уже завершен,
+// и CompletedFutureReturnValueHandler отправляет ответ синхронно, без асинхронной диспетчеризации
+@Component
+@Slf4j
+public class ControllerExecutors {
+    private final ControllerExecutor films;
+    private final ControllerExecutor users;
+
+    public ControllerExecutors(@Value("${filmorate.async.mode:blocking}") String mode,
+                               @Value("${filmorate.async.films.threads:16}") int filmThreads,
+                               @Value("${filmorate.async.films.queue-capacity:200}") int filmQueue,
+                               @Value("${filmorate.async.users.threads:8}") int userThreads,
+                               @Value("${filmorate.async.users.queue-capacity:100}") int userQueue) {
+        switch (mode) {
+            case "blocking":
+                films = new ControllerExecutor(null);
+                users = new ControllerExecutor(null);
+                break;
+            case "executor":
+                films = new ControllerExecutor(pool("films", filmThreads, filmQueue));
+                users = new ControllerExecutor(pool("users", userThreads, userQueue));
+                log.info("Обработчики контроллеров выполняются в пулах: films {} потоков, users {} потоков",
+                        filmThreads, userThreads);
+                break;
+            default:
+                throw new IllegalStateException("Неизвестный режим filmorate.async.mode: " + mode);
+        }
+    }
+
+    public ControllerExecutor films() {
+        return films;
+    }
+
+    public ControllerExecutor users() {
+        return users;
+    }
+
+    // Пулы по названиям контроллеров; в режиме blocking пулов нет
+    public Map<String, ThreadPoolTaskExecutor> pools() {
+        Map<String, ThreadPoolTaskExecutor> pools = new LinkedHashMap<>();
+        if (films.getPool() != null) {
+            pools.put("films", films.getPool());
+            pools.put("users", users.getPool());
+        }
+        return pools;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pools().values().forEach(ThreadPoolTaskExecutor::shutdown);
+    }
+
+    private static ThreadPoolTaskExecutor pool(String name, int threads, int queueCapacity) {
+        ThreadPoolTaskExecutor pool = new ThreadPoolTaskExecutor();
+        pool.setCorePoolSize(threads);
+        pool.setMaxPoolSize(threads);
+        pool.setQueueCapacity(queueCapacity);
+        pool.setThreadNamePrefix(name + "-handler-");
+        pool.setTaskDecorator(RequestStats::propagate);
+        pool.setWaitForTasksToCompleteOnShutdown(true);
+        pool.setAwaitTerminationSeconds(10);
+        pool.initialize();
+        return pool;
+    }
+}
@@ -0,0 +1,68 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Условные GET-запросы: если тег из If-None-Match совпадает с текущим, ответ 304 отдается
+// без загрузки ресурса. Тег ответа никогда не должен быть новее его тела.
+// Теги слабые (W/): Tomcat не сжимает ответы со строгим ETag, а сжатое и несжатое тело
+// одного ресурса по байтам различаются
+final class ETags {
+
+    private ETags() {
+    }
+
+    // Тег вычисляется до загрузки тела. Подходит для ресурсов без кэша: тело читается из базы
+    // позже тега и поэтому не старше его. etag == null - ресурс не найден, тело формируется обычным путем
+    static <T> ResponseEntity<T> respond(String ifNoneMatch, String etag, Supplier<T> body) {
+        if (etag == null) {
+            return ResponseEntity.ok(body.get());
+        }
+        String quoted = quote(etag);
+        if (matches(ifNoneMatch, quoted)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(quoted).build();
+        }
+        return ResponseEntity.ok().eTag(quoted).body(body.get());
+    }
+
+    // Для ресурсов, которые могут отдаваться из кэша: текущий тег (currentTag) нужен только для сравнения
+    // с If-None-Match, а тег ответа вычисляется по загруженному телу (bodyTag). Тело из кэша, загруженное
+    // до изменения ресурса, получает тег своей версии: после сброса кэша клиент с этим тегом получит новое тело
+    static <T> ResponseEntity<T> respond(String ifNoneMatch, Supplier<String> currentTag,
+                                         Supplier<T> body, Function<T, String> bodyTag) {
+        if (ifNoneMatch != null) {
+            String current = currentTag.get();
+            if (current != null && matches(ifNoneMatch, quote(current))) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(quote(current)).build();
+            }
+        }
+        T loaded = body.get();
+        return ResponseEntity.ok().eTag(quote(bodyTag.apply(loaded))).body(loaded);
+    }
+
+    // Для If-None-Match теги сравниваются без учета префикса W/, * совпадает с любым тегом
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaque = opaque(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || opaque(tag).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    private static String quote(String etag) {
+        return "W/\"" + etag + "\"";
+    }
+}
@@ -1,60 +1,132 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.model.Like;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import ru.yandex.practicum.filmorate.service.FilmService;
-import ru.yandex.practicum.filmorate.service.UserService;
 
 @RestController
 @RequestMapping("/films")
 @RequiredArgsConstructor
 public class FilmController {
+    static final String NDJSON = "application/x-ndjson";
 
     private final FilmService filmService;
-    private final UserService userService;
+    private final ObjectMapper objectMapper;
+    private final ControllerExecutors executors;
 
+    // Без параметров возвращается весь каталог; с after и/или limit - страница фильмов с id больше after.
+    // Если страница заполнена, в заголовке X-Next-Cursor передается значение after для следующей страницы.
+    // С view=count вместо списка лайков каждого фильма возвращается likeCount
     @GetMapping
-    public Collection<Film> findAll() {
-        return filmService.findAll();
+    public CompletableFuture<ResponseEntity<Collection<Film>>> findAll(@RequestParam(required = false) Integer after,
+                                                                       @RequestParam(required = false) Integer limit,
+                                                                       @RequestParam(required = false) String view) {
+        return executors.films().supply(() -> {
+            if (after == null && limit == null) {
+                return ResponseEntity.ok(filmService.findAll(view));
+            }
+            List<Film> page = filmService.findPage(after, limit, view);
+            return Pages.respond(page, limit, Film::getId);
+        });
+    }
+
+    // Выгрузка всего каталога в формате NDJSON: фильмы пишутся в ответ по одному, по мере чтения из базы.
+    // Выгрузка и массовая загрузка работают с потоками запроса и ответа и всегда выполняются в потоке Tomcat
+    @GetMapping(value = "/export", produces = NDJSON)
+    public void export(HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        ObjectWriter writer = objectMapper.writerFor(Film.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.setRootValueSeparator(null);
+            filmService.exportAll(film -> {
+                try {
+                    writer.writeValue(generator, film);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    // Массовая загрузка фильмов из JSON-массива или NDJSON: тело читается потоком, по одному фильму.
+    // В ответе - идентификаторы фильмов в порядке их следования в запросе и ошибки отклоненных фильмов
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_JSON_VALUE, NDJSON})
+    public ImportResult importFilms(HttpServletRequest request) throws IOException {
+        try (MappingIterator<Film> films = objectMapper.readerFor(Film.class).readValues(request.getInputStream())) {
+            return filmService.importFilms(films);
+        }
+    }
+
+    // Массовая загрузка лайков: элементы вида {"filmId": 1, "userId": 2}
+    @PostMapping(value = "/likes/import", consumes = {MediaType.APPLICATION_JSON_VALUE, NDJSON})
+    public ImportResult importLikes(HttpServletRequest request) throws IOException {
+        try (MappingIterator<Like> likes = objectMapper.readerFor(Like.class).readValues(request.getInputStream())) {
+            return filmService.importLikes(likes);
+        }
     }
 
     @PostMapping
-    public Film create(@Valid @RequestBody Film film) {
-        return filmService.create(film);
+    public CompletableFuture<Film> create(@Valid @RequestBody Film film) {
+        return executors.films().supply(() -> filmService.create(film));
     }
 
     @PutMapping
-    public Film put(@Valid @RequestBody Film film) {
-        return filmService.put(film);
+    public CompletableFuture<Film> put(@Valid @RequestBody Film film) {
+        return executors.films().supply(() -> filmService.put(film));
     }
 
+    // Ответ содержит ETag версии отданного фильма; с совпавшим If-None-Match возвращается 304 без загрузки фильма
     @GetMapping("/{id}")
-    public Film findById(@PathVariable Integer id) {
-        return filmService.findById(id);
+    public CompletableFuture<ResponseEntity<Film>> findById(
+            @PathVariable Integer id,
+            @RequestParam(required = false) String view,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return executors.films().supply(() -> ETags.respond(ifNoneMatch,
+                () -> filmService.filmTag(id, view),
+                () -> filmService.findById(id, view),
+                film -> filmService.filmTag(film, view)));
     }
 
     @PutMapping("/{id}/like/{userId}")
-    public void like(@PathVariable Integer id, @PathVariable Integer userId) {
-        // Проверка, существует ли такой пользователь. Если его нет, выбросит NotFoundException
-        userService.findById(userId);
-        filmService.like(id, userId);
+    public CompletableFuture<Void> like(@PathVariable Integer id, @PathVariable Integer userId) {
+        return executors.films().run(() -> filmService.like(id, userId));
     }
 
     @DeleteMapping("/{id}/like/{userId}")
-    public void dislike(@PathVariable Integer id, @PathVariable Integer userId) {
-        // Проверка, существует ли такой пользователь. Если его нет, выбросит NotFoundException
-        userService.findById(userId);
-        filmService.dislike(id, userId);
+    public CompletableFuture<Void> dislike(@PathVariable Integer id, @PathVariable Integer userId) {
+        return executors.films().run(() -> filmService.dislike(id, userId));
     }
 
     @GetMapping("/popular")
-    public List<Film> mostPopular(@RequestParam(defaultValue = "10", required = false) Integer count) {
-        return filmService.getMostPopular(count);
+    public CompletableFuture<ResponseEntity<List<Film>>> mostPopular(
+            @RequestParam(defaultValue = "10", required = false) Integer count,
+            @RequestParam(required = false) String view,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return executors.films().supply(() -> ETags.respond(ifNoneMatch,
+                () -> filmService.popularTag(count, view),
+                () -> filmService.getMostPopular(count, view),
+                films -> filmService.popularTag(count, view, films)));
     }
 }
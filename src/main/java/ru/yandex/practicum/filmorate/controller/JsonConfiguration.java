@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JsonConfiguration {
+
+    // Геттеры и сеттеры моделей вызываются через сгенерированные LambdaMetafactory функции,
+    // а не через рефлексию; Spring Boot регистрирует модуль в общем ObjectMapper
+    @Bean
+    public Module blackbirdModule() {
+        return new BlackbirdModule();
+    }
+}
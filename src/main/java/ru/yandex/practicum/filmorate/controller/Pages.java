@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.http.ResponseEntity;
+import ru.yandex.practicum.filmorate.service.Pagination;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.ToIntFunction;
+
+// Ответ со страницей: если страница заполнена, в заголовке X-Next-Cursor передается значение after
+// для следующей страницы - идентификатор последнего элемента
+final class Pages {
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private Pages() {
+    }
+
+    static <T> ResponseEntity<Collection<T>> respond(List<T> page, Integer limit, ToIntFunction<T> id) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (!page.isEmpty() && page.size() == Objects.requireNonNullElse(limit, Pagination.DEFAULT_PAGE_SIZE)) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(id.applyAsInt(page.get(page.size() - 1))));
+        }
+        return response.body(page);
+    }
+}
@@ -1,14 +1,24 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.ImportResult;
 import ru.yandex.practicum.filmorate.model.User;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 
 import ru.yandex.practicum.filmorate.service.UserService;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/users")
@@ -16,44 +26,79 @@ import java.util.*;
 public class UserController {
 
     private final UserService userService;
+    private final ObjectMapper objectMapper;
+    private final ControllerExecutors executors;
 
+    // Без параметров возвращаются все пользователи; с after и/или limit - страница пользователей с id больше after.
+    // Если страница заполнена, в заголовке X-Next-Cursor передается значение after для следующей страницы
     @GetMapping()
-    public Collection<User> findAll() {
-        return userService.findAll();
+    public CompletableFuture<ResponseEntity<Collection<User>>> findAll(@RequestParam(required = false) Integer after,
+                                                                       @RequestParam(required = false) Integer limit) {
+        return executors.users().supply(() -> {
+            if (after == null && limit == null) {
+                return ResponseEntity.ok(userService.findAll());
+            }
+            List<User> page = userService.findPage(after, limit);
+            return Pages.respond(page, limit, User::getId);
+        });
+    }
+
+    // Массовая загрузка пользователей из JSON-массива или NDJSON, см. FilmController.importFilms
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_JSON_VALUE, FilmController.NDJSON})
+    public ImportResult importUsers(HttpServletRequest request) throws IOException {
+        try (MappingIterator<User> users = objectMapper.readerFor(User.class).readValues(request.getInputStream())) {
+            return userService.importUsers(users);
+        }
+    }
+
+    // Массовая загрузка заявок в друзья: элементы вида {"userId": 1, "friendId": 2}
+    @PostMapping(value = "/friends/import", consumes = {MediaType.APPLICATION_JSON_VALUE, FilmController.NDJSON})
+    public ImportResult importFriends(HttpServletRequest request) throws IOException {
+        try (MappingIterator<Friendship> friendships =
+                     objectMapper.readerFor(Friendship.class).readValues(request.getInputStream())) {
+            return userService.importFriends(friendships);
+        }
     }
 
     @PostMapping
-    public User create(@Valid @RequestBody User user) {
-        return userService.create(user);
+    public CompletableFuture<User> create(@Valid @RequestBody User user) {
+        return executors.users().supply(() -> userService.create(user));
     }
 
     @PutMapping
-    public User put(@Valid @RequestBody User user) {
-        return userService.put(user);
+    public CompletableFuture<User> put(@Valid @RequestBody User user) {
+        return executors.users().supply(() -> userService.put(user));
     }
 
+    // Ответ содержит ETag; с совпавшим If-None-Match возвращается 304 без загрузки пользователя
     @GetMapping("/{id}")
-    public User findById(@PathVariable Integer id) {
-        return userService.findById(id);
+    public CompletableFuture<ResponseEntity<User>> findById(
+            @PathVariable Integer id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return executors.users().supply(() ->
+                ETags.respond(ifNoneMatch, userService.userTag(id), () -> userService.findById(id)));
     }
 
     @PutMapping("/{id}/friends/{friendId}")
-    public void addFriend(@PathVariable Integer id, @PathVariable Integer friendId) {
-        userService.addFriend(id, friendId);
+    public CompletableFuture<Void> addFriend(@PathVariable Integer id, @PathVariable Integer friendId) {
+        return executors.users().run(() -> userService.addFriend(id, friendId));
     }
 
     @DeleteMapping("/{id}/friends/{friendId}")
-    public void deleteFriend(@PathVariable Integer id, @PathVariable Integer friendId) {
-        userService.removeFriend(id, friendId);
+    public CompletableFuture<Void> deleteFriend(@PathVariable Integer id, @PathVariable Integer friendId) {
+        return executors.users().run(() -> userService.removeFriend(id, friendId));
     }
 
     @GetMapping("/{id}/friends")
-    public Collection<User> getUsersFriends(@PathVariable Integer id) {
-        return userService.getUsersFriends(id);
+    public CompletableFuture<ResponseEntity<Collection<User>>> getUsersFriends(
+            @PathVariable Integer id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return executors.users().supply(() ->
+                ETags.respond(ifNoneMatch, userService.friendsTag(id), () -> userService.getUsersFriends(id)));
     }
 
     @GetMapping("/{id}/friends/common/{otherId}")
-    public Collection<User> getCommonFriends(@PathVariable Integer id, @PathVariable Integer otherId) {
-        return userService.commonFriends(id, otherId);
+    public CompletableFuture<Collection<User>> getCommonFriends(@PathVariable Integer id, @PathVariable Integer otherId) {
+        return executors.users().supply(() -> userService.commonFriends(id, otherId));
     }
 }
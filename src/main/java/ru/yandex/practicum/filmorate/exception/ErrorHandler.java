@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.exception;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -8,8 +9,10 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
 import javax.validation.ValidationException;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestControllerAdvice
+@Slf4j
 public class ErrorHandler {
     @ExceptionHandler(ValidationException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
@@ -32,6 +35,7 @@ public class ErrorHandler {
     @ExceptionHandler(IncorrectParameterException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ErrorResponse handleIncorrectParam(final IncorrectParameterException e) {
+        log.info("Некорректный параметр запроса: {}", e.getParameter());
         return new ErrorResponse(String.format("Ошибка с полем \"%s\".", e.getParameter()));
     }
 
@@ -41,9 +45,18 @@ public class ErrorHandler {
         return new ErrorResponse(e.getMessage());
     }
 
+    // Очередь пула обработчиков контроллера заполнена
+    @ExceptionHandler(RejectedExecutionException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ErrorResponse handleRejected(final RejectedExecutionException e) {
+        log.warn("Запрос отклонен: очередь обработчиков заполнена");
+        return new ErrorResponse("Сервис перегружен, повторите запрос позже.");
+    }
+
     @ExceptionHandler
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ErrorResponse handleThrowable(final Throwable e) {
+        log.error("Непредвиденная ошибка при обработке запроса", e);
         return new ErrorResponse("Произошла непредвиденная ошибка.");
     }
 }
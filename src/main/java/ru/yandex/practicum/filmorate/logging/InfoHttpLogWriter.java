@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.zalando.logbook.Correlation;
+import org.zalando.logbook.HttpLogWriter;
+import org.zalando.logbook.Logbook;
+import org.zalando.logbook.Precorrelation;
+
+// Запросы и ответы пишутся на уровне INFO в логгер Logbook, а не на TRACE, как в DefaultHttpLogWriter:
+// для журнала запросов не нужно включать TRACE для всего пакета org.zalando.logbook
+@Component
+public class InfoHttpLogWriter implements HttpLogWriter {
+    private static final Logger log = LoggerFactory.getLogger(Logbook.class);
+
+    @Override
+    public boolean isActive() {
+        return log.isInfoEnabled();
+    }
+
+    @Override
+    public void write(Precorrelation precorrelation, String request) {
+        log.info(request);
+    }
+
+    @Override
+    public void write(Correlation correlation, String response) {
+        log.info(response);
+    }
+}
@@ -0,0 +1,40 @@
+package ru.yandex.practicum.filmorate.logging;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.zalando.logbook.Correlation;
+import org.zalando.logbook.HttpRequest;
+import org.zalando.logbook.HttpResponse;
+import org.zalando.logbook.Sink;
+import org.zalando.logbook.Strategy;
+
+import java.io.IOException;
+
+// Тела запросов и ответов Logbook пишет для изменяющих запросов (не GET и не HEAD) и для ошибок.
+// Ответ на чтение буферизуется, а тело выбрасывается при записи в лог, когда статус уже известен:
+// для успешного чтения в лог попадают статус и время, для ошибки (статус от 400) - и тело ответа,
+// как в BodyOnlyIfStatusAtLeastStrategy Logbook.
+// Полное логирование тел: filmorate.logging.bodies=all
+@Component
+@ConditionalOnProperty(name = "filmorate.logging.bodies", havingValue = "write-or-error", matchIfMissing = true)
+public class WriteOrErrorBodyStrategy implements Strategy {
+    private static final int MIN_ERROR_STATUS = 400;
+
+    @Override
+    public HttpRequest process(HttpRequest request) throws IOException {
+        return isRead(request) ? request.withoutBody() : request.withBody();
+    }
+
+    @Override
+    public void write(Correlation correlation, HttpRequest request, HttpResponse response, Sink sink) throws IOException {
+        if (isRead(request) && response.getStatus() < MIN_ERROR_STATUS) {
+            sink.write(correlation, request, response.withoutBody());
+        } else {
+            sink.write(correlation, request, response);
+        }
+    }
+
+    private static boolean isRead(HttpRequest request) {
+        return "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+    }
+}
@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Счетчик выполненных JDBC-запросов: общий и для текущего HTTP-запроса через RequestStats
+public final class JdbcStatementCounter {
+    private static final LongAdder TOTAL = new LongAdder();
+
+    private JdbcStatementCounter() {
+    }
+
+    static void increment() {
+        TOTAL.increment();
+        RequestStats.statementExecuted();
+    }
+
+    public static long total() {
+        return TOTAL.sum();
+    }
+}
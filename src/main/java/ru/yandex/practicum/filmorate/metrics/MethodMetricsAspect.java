@@ -0,0 +1,41 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+// Таймер filmorate.method на каждом публичном методе хранилищ в базе и сервисов.
+// Количество вызовов и ошибок видно по счетчику таймера с тегами class, method и exception
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class MethodMetricsAspect {
+    static final String METRIC = "filmorate.method";
+
+    private final MeterRegistry meterRegistry;
+
+    @Around("execution(public * ru.yandex.practicum.filmorate.storage.film.FilmDbStorage.*(..)) || " +
+            "execution(public * ru.yandex.practicum.filmorate.storage.user.UserDbStorage.*(..)) || " +
+            "execution(public * ru.yandex.practicum.filmorate.service.*Service.*(..))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String exception = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(METRIC)
+                    .description("Время выполнения методов хранилищ и сервисов")
+                    .tag("class", joinPoint.getSignature().getDeclaringType().getSimpleName())
+                    .tag("method", joinPoint.getSignature().getName())
+                    .tag("exception", exception)
+                    .register(meterRegistry));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.yandex.practicum.filmorate.controller.ControllerExecutors;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.LikeWriteBehind;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class MetricsConfiguration {
+
+    // Все DataSource приложения оборачиваются для подсчета JDBC-запросов
+    @Bean
+    public static BeanPostProcessor statementCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource && !(bean instanceof StatementCountingDataSource)) {
+                    return new StatementCountingDataSource((DataSource) bean);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder filmorateMeters(FilmCache filmCache, LikeWriteBehind likeWriteBehind, ControllerExecutors executors) {
+        return registry -> {
+            FunctionCounter.builder("filmorate.jdbc.statements", JdbcStatementCounter.class, c -> JdbcStatementCounter.total())
+                    .description("Всего выполнено JDBC-запросов")
+                    .register(registry);
+            FunctionCounter.builder("filmorate.cache.films.requests", filmCache, FilmCache::getHits)
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("filmorate.cache.films.requests", filmCache, FilmCache::getMisses)
+                    .tag("result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("filmorate.cache.films.evictions", filmCache, FilmCache::getEvictions)
+                    .register(registry);
+            Gauge.builder("filmorate.cache.films.size", filmCache, FilmCache::size)
+                    .register(registry);
+            Gauge.builder("filmorate.cache.films.weight", filmCache, FilmCache::weight)
+                    .register(registry);
+            Gauge.builder("filmorate.likes.write.behind.pending", likeWriteBehind, LikeWriteBehind::pendingCount)
+                    .register(registry);
+            // executor.active, executor.queued, executor.completed и др. с тегом name=films|users
+            executors.pools().forEach((name, pool) -> new ExecutorServiceMetrics(
+                    pool.getThreadPoolExecutor(), name, Tags.empty()).bindTo(registry));
+        };
+    }
+}
@@ -0,0 +1,97 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Метрика количества JDBC-запросов на один HTTP-запрос (рост значения для эндпоинта означает запросы N+1)
+// и итоговая строка лога по каждому запросу. Строка пишется для доли sample-rate запросов,
+// а медленные запросы и ответы с ошибкой пишутся всегда. Для асинхронных обработчиков
+// итог записывается по завершении асинхронной обработки
+@Component
+@Slf4j
+public class RequestMetricsFilter extends OncePerRequestFilter {
+    static final String METRIC = "filmorate.jdbc.statements.per.request";
+
+    private final MeterRegistry meterRegistry;
+    private final double sampleRate;
+    private final long slowMs;
+
+    public RequestMetricsFilter(MeterRegistry meterRegistry,
+                                @Value("${filmorate.logging.request-summary.sample-rate:0.01}") double sampleRate,
+                                @Value("${filmorate.logging.request-summary.slow-ms:500}") long slowMs) {
+        this.meterRegistry = meterRegistry;
+        this.sampleRate = sampleRate;
+        this.slowMs = slowMs;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        RequestStats stats = RequestStats.start();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestStats.finish();
+            if (isAsyncStarted(request)) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        record(request, response, start, stats);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                record(request, response, start, stats);
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, HttpServletResponse response, long start, RequestStats stats) {
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern == null ? "UNKNOWN" : pattern.toString();
+        DistributionSummary.builder(METRIC)
+                .description("Количество JDBC-запросов на один HTTP-запрос")
+                .tag("method", request.getMethod())
+                .tag("uri", uri)
+                .serviceLevelObjectives(1, 2, 3, 5, 10, 20, 50, 100)
+                .register(meterRegistry)
+                .record(stats.getStatements());
+        if (log.isInfoEnabled() && isLogged(response.getStatus(), durationMs)) {
+            log.info("Запрос обработан: method={} uri={} path={} status={} durationMs={} statements={} rows={}",
+                    request.getMethod(), uri, request.getRequestURI(), response.getStatus(), durationMs,
+                    stats.getStatements(), stats.getRows());
+        }
+    }
+
+    private boolean isLogged(int status, long durationMs) {
+        return status >= 400 || durationMs >= slowMs || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+}
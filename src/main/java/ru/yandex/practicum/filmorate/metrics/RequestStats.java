@@ -0,0 +1,68 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+// Статистика HTTP-запроса, который обрабатывается в текущем потоке:
+// количество JDBC-запросов и количество строк, прочитанных хранилищами
+public final class RequestStats {
+    private static final ThreadLocal<RequestStats> CURRENT = new ThreadLocal<>();
+
+    private long statements;
+    private long rows;
+
+    private RequestStats() {
+    }
+
+    public static RequestStats start() {
+        RequestStats stats = new RequestStats();
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    public static void finish() {
+        CURRENT.remove();
+    }
+
+    // Переносит статистику текущего запроса в поток, который выполнит задачу:
+    // обработчик запроса может выполняться в пуле контроллера, а не в потоке Tomcat
+    public static Runnable propagate(Runnable task) {
+        RequestStats stats = CURRENT.get();
+        return () -> {
+            RequestStats previous = CURRENT.get();
+            set(stats);
+            try {
+                task.run();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+
+    private static void set(RequestStats stats) {
+        if (stats == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(stats);
+        }
+    }
+
+    static void statementExecuted() {
+        RequestStats stats = CURRENT.get();
+        if (stats != null) {
+            stats.statements++;
+        }
+    }
+
+    public static void rowsRead(int count) {
+        RequestStats stats = CURRENT.get();
+        if (stats != null) {
+            stats.rows += count;
+        }
+    }
+
+    public long getStatements() {
+        return statements;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,152 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.*;
+
+// Множество идентификаторов на отсортированном массиве int: 4 байта на элемент вместо
+// Integer и узла HashMap. Добавление по возрастанию - дописывание в конец массива,
+// в остальных случаях элемент вставляется со сдвигом хвоста.
+// Как и HashSet, не предназначено для одновременного изменения из нескольких потоков
+@JsonSerialize(using = CompactIntSet.Serializer.class)
+public class CompactIntSet extends AbstractSet<Integer> {
+    private static final int[] EMPTY = new int[0];
+
+    private int[] values;
+    private int size;
+
+    public CompactIntSet() {
+        values = EMPTY;
+    }
+
+    public static CompactIntSet copyOf(Collection<Integer> source) {
+        CompactIntSet copy = new CompactIntSet();
+        if (source instanceof CompactIntSet) {
+            CompactIntSet other = (CompactIntSet) source;
+            copy.values = Arrays.copyOf(other.values, other.size);
+            copy.size = other.size;
+        } else {
+            int[] values = source.stream().mapToInt(CompactIntSet::unbox).sorted().distinct().toArray();
+            copy.values = values;
+            copy.size = values.length;
+        }
+        return copy;
+    }
+
+    public boolean add(int value) {
+        int position = size > 0 && values[size - 1] < value ? -size - 1 : Arrays.binarySearch(values, 0, size, value);
+        if (position >= 0) {
+            return false;
+        }
+        position = -position - 1;
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(8, size + (size >> 1)));
+        }
+        System.arraycopy(values, position, values, position + 1, size - position);
+        values[position] = value;
+        size++;
+        return true;
+    }
+
+    public boolean contains(int value) {
+        return Arrays.binarySearch(values, 0, size, value) >= 0;
+    }
+
+    public boolean remove(int value) {
+        int position = Arrays.binarySearch(values, 0, size, value);
+        if (position < 0) {
+            return false;
+        }
+        removeAt(position);
+        return true;
+    }
+
+    public int[] toIntArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    @Override
+    public boolean add(Integer value) {
+        return add(unbox(value));
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        return value instanceof Integer && contains((int) (Integer) value);
+    }
+
+    @Override
+    public boolean remove(Object value) {
+        return value instanceof Integer && remove((int) (Integer) value);
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<>() {
+            private int next;
+            private boolean canRemove;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Integer next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                canRemove = true;
+                return values[next++];
+            }
+
+            @Override
+            public void remove() {
+                if (!canRemove) {
+                    throw new IllegalStateException();
+                }
+                canRemove = false;
+                removeAt(--next);
+            }
+        };
+    }
+
+    private void removeAt(int position) {
+        System.arraycopy(values, position + 1, values, position, size - position - 1);
+        size--;
+    }
+
+    // null не может быть идентификатором: вместо NullPointerException при распаковке - понятная ошибка
+    private static int unbox(Integer value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Идентификатор не может быть null");
+        }
+        return value;
+    }
+
+    // В JSON множество пишется массивом чисел прямо из int[], без упаковки элементов в Integer
+    static class Serializer extends StdSerializer<CompactIntSet> {
+        Serializer() {
+            super(CompactIntSet.class);
+        }
+
+        @Override
+        public void serialize(CompactIntSet set, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeArray(set.values, 0, set.size);
+        }
+    }
+}
@@ -1,6 +1,12 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonSetter;
+import com.fasterxml.jackson.annotation.Nulls;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import ru.yandex.practicum.filmorate.validator.ValidFilmDate;
 
 import javax.validation.constraints.*;
@@ -11,7 +17,14 @@ import java.util.Set;
 @Data
 public class Film {
     private int id;
-    private Set<Integer> likes = new HashSet<>();
+    // "likes": [null] отклоняется при чтении JSON и дает 400, а не ошибку при распаковке в CompactIntSet
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonSetter(contentNulls = Nulls.FAIL)
+    private Set<Integer> likes = new CompactIntSet();
+    // Заполняется только в представлении view=count, множество лайков при этом не загружается
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Integer likeCount;
     @NotBlank(message = "Название не может быть пустым")
     private String name;
     @Size(max = 200, message = "Длина описания не может быть больше 200 символов")
@@ -23,6 +36,10 @@ public class Film {
     private Set<Genre> genres = new HashSet<>();
     @NotNull
     private Rating mpa;
+    // Версия строки фильма на момент загрузки, из нее строится ETag ответа
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private long version;
 
     public Film(String name, String description, LocalDate releaseDate, int duration) {
         this.name = name;
@@ -30,4 +47,9 @@ public class Film {
         this.releaseDate = releaseDate;
         this.duration = duration;
     }
+
+    // Любое множество приводится к CompactIntSet, в JSON остается массивом чисел
+    public void setLikes(Set<Integer> likes) {
+        this.likes = likes == null || likes instanceof CompactIntSet ? likes : CompactIntSet.copyOf(likes);
+    }
 }
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.Optional;
+
+// Представление фильма в ответе: полное множество лайков или только их количество
+@RequiredArgsConstructor
+public enum FilmView {
+    FULL("full"),
+    COUNT("count");
+
+    private final String value;
+
+    public static Optional<FilmView> fromValue(String value) {
+        for (FilmView view : values()) {
+            if (view.value.equals(value)) {
+                return Optional.of(view);
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+// Заявка пользователя userId в друзья к пользователю friendId в массовой загрузке
+@Data
+public class Friendship {
+    private int userId;
+    private int friendId;
+
+    public Friendship(int userId, int friendId) {
+        this.userId = userId;
+        this.friendId = friendId;
+    }
+}
@@ -1,8 +1,9 @@
 package ru.yandex.practicum.filmorate.model;
 
-import lombok.Data;
+import lombok.Value;
 
-@Data
+// Неизменяемый: справочник раздает одни и те же экземпляры всем фильмам и ответам
+@Value
 public class Genre {
     private int id;
     private String name;
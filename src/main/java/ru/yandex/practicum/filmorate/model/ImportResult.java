@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Итог массовой загрузки. ids.get(i) - идентификатор, присвоенный i-му элементу входного потока,
+// или null, если элемент отклонен; для лайков и дружбы идентификаторы не возвращаются
+@Data
+public class ImportResult {
+    private int imported;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<Integer> ids;
+    private List<ImportError> errors = new ArrayList<>();
+
+    public ImportResult(boolean withIds) {
+        ids = withIds ? new ArrayList<>() : null;
+    }
+
+    @Data
+    public static class ImportError {
+        private final int index;
+        private final String message;
+    }
+}
@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+// Лайк пользователя фильму в массовой загрузке
+@Data
+public class Like {
+    private int filmId;
+    private int userId;
+
+    public Like(int filmId, int userId) {
+        this.filmId = filmId;
+        this.userId = userId;
+    }
+}
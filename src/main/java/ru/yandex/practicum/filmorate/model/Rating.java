@@ -1,8 +1,9 @@
 package ru.yandex.practicum.filmorate.model;
 
-import lombok.Data;
+import lombok.Value;
 
-@Data
+// Неизменяемый, как и Genre: справочник раздает одни и те же экземпляры
+@Value
 public class Rating {
     private int id;
     private String name;
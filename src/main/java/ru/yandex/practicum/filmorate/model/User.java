@@ -1,17 +1,22 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonSetter;
+import com.fasterxml.jackson.annotation.Nulls;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import ru.yandex.practicum.filmorate.validator.ValidLogin;
 
 import javax.validation.constraints.*;
 import java.time.LocalDate;
-import java.util.HashSet;
 import java.util.Set;
 
 @Data
 public class User {
     private int id;
-    private Set<Integer> friends = new HashSet<>();
+    // "friends": [null] отклоняется при чтении JSON и дает 400, как и null в лайках фильма
+    @EqualsAndHashCode.Exclude
+    @JsonSetter(contentNulls = Nulls.FAIL)
+    private Set<Integer> friends = new CompactIntSet();
     @NotBlank(message = "Электронная почта не может быть пустой")
     @Email(message = "Электронная почта не соответствует формату")
     private String email;
@@ -28,4 +33,9 @@ public class User {
         this.name = name;
         this.birthday = birthday;
     }
+
+    // Любое множество приводится к CompactIntSet, в JSON остается массивом чисел
+    public void setFriends(Set<Integer> friends) {
+        this.friends = friends == null || friends instanceof CompactIntSet ? friends : CompactIntSet.copyOf(friends);
+    }
 }
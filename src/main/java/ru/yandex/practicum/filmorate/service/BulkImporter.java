@@ -0,0 +1,125 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Массовая загрузка: элементы читаются из потока (JSON-массив или NDJSON) по одному, проверяются
+// и записываются частями по chunkSize элементов, каждая часть - одной транзакцией хранилища.
+// Записанные части не откатываются: если в потоке встретится некорректный JSON, чтение
+// останавливается, а ошибка возвращается в итоге вместе с номером элемента
+@Component
+@Slf4j
+public class BulkImporter {
+    private final Validator validator;
+    private final int chunkSize;
+
+    public BulkImporter(Validator validator, @Value("${filmorate.import.chunk-size:1000}") int chunkSize) {
+        this.validator = validator;
+        this.chunkSize = chunkSize;
+    }
+
+    // check возвращает текст ошибки для элемента или null. write записывает часть и возвращает
+    // для каждого элемента положительное значение (идентификатор, если withIds) или 0, если элемент
+    // отклонен хранилищем с сообщением rejected
+    public <T> ImportResult run(MappingIterator<T> source,
+                                Function<T, String> check,
+                                Function<List<T>, int[]> write,
+                                boolean withIds,
+                                String rejected) throws IOException {
+        ImportResult result = new ImportResult(withIds);
+        List<T> chunk = new ArrayList<>(chunkSize);
+        List<Integer> positions = new ArrayList<>(chunkSize);
+        int index = 0;
+        try {
+            while (source.hasNextValue()) {
+                T item = source.nextValue();
+                if (withIds) {
+                    result.getIds().add(null);
+                }
+                String error = validate(item, check);
+                if (error == null) {
+                    chunk.add(item);
+                    positions.add(index);
+                } else {
+                    reject(result, index, error);
+                }
+                index++;
+                if (chunk.size() == chunkSize) {
+                    writeChunk(chunk, positions, write, result, rejected);
+                }
+            }
+        } catch (JsonProcessingException e) {
+            log.info("Массовая загрузка остановлена на элементе {}: {}", index, e.getOriginalMessage());
+            reject(result, index, "Некорректный JSON: " + e.getOriginalMessage());
+        }
+        writeChunk(chunk, positions, write, result, rejected);
+        result.getErrors().sort(Comparator.comparingInt(ImportResult.ImportError::getIndex));
+        log.info("Массовая загрузка: прочитано {}, записано {}, отклонено {}",
+                index, result.getImported(), result.getErrors().size());
+        return result;
+    }
+
+    private <T> String validate(T item, Function<T, String> check) {
+        Set<ConstraintViolation<T>> violations = validator.validate(item);
+        if (!violations.isEmpty()) {
+            return violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+        }
+        return check.apply(item);
+    }
+
+    private <T> void writeChunk(List<T> chunk,
+                                List<Integer> positions,
+                                Function<List<T>, int[]> write,
+                                ImportResult result,
+                                String rejected) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            int[] keys = write.apply(chunk);
+            for (int i = 0; i < keys.length; i++) {
+                int position = positions.get(i);
+                if (keys[i] > 0) {
+                    result.setImported(result.getImported() + 1);
+                    if (result.getIds() != null) {
+                        result.getIds().set(position, keys[i]);
+                    }
+                } else {
+                    reject(result, position, rejected);
+                }
+            }
+        } catch (DataAccessException e) {
+            // Транзакция части откатилась целиком, остальные части продолжают загружаться
+            log.error("Не удалось записать часть массовой загрузки", e);
+            String message = "Часть не записана: " + NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+            for (int position : positions) {
+                reject(result, position, message);
+            }
+        }
+        chunk.clear();
+        positions.clear();
+    }
+
+    private static void reject(ImportResult result, int index, String message) {
+        result.getErrors().add(new ImportResult.ImportError(index, message));
+    }
+}
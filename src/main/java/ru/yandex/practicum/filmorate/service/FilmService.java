@@ -1,17 +1,30 @@
 package ru.yandex.practicum.filmorate.service;
 
+import com.fasterxml.jackson.databind.MappingIterator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+import ru.yandex.practicum.filmorate.exception.IncorrectParameterException;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmView;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.Rating;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
@@ -22,10 +35,30 @@ public class FilmService {
     @Autowired
     @Qualifier("inDbUser")
     private UserDbStorage userStorage;
+    @Autowired
+    private BulkImporter bulkImporter;
 
     public Collection<Film> findAll() {
+        return findAll(null);
+    }
+
+    public Collection<Film> findAll(String view) {
         log.info("Получен запрос к эндпоинту GET /films");
-        return filmStorage.findAll();
+        return filmStorage.findAll(checkView(view));
+    }
+
+    public List<Film> findPage(Integer after, Integer limit) {
+        return findPage(after, limit, null);
+    }
+
+    public List<Film> findPage(Integer after, Integer limit, String view) {
+        log.info("Получен запрос к эндпоинту GET /films?after={}&limit={}", after, limit);
+        return filmStorage.findPage(Pagination.checkAfter(after), Pagination.checkLimit(limit), checkView(view));
+    }
+
+    public void exportAll(Consumer<Film> action) {
+        log.info("Получен запрос к эндпоинту GET /films/export");
+        filmStorage.exportAll(action);
     }
 
     public Film create(Film film) {
@@ -33,20 +66,87 @@ public class FilmService {
         return filmStorage.create(film);
     }
 
+    public ImportResult importFilms(MappingIterator<Film> films) throws IOException {
+        log.info("Получен запрос к эндпоинту POST /films/import");
+        return bulkImporter.run(films, this::checkReferences, filmStorage::importFilms, true, null);
+    }
+
+    public ImportResult importLikes(MappingIterator<Like> likes) throws IOException {
+        log.info("Получен запрос к эндпоинту POST /films/likes/import");
+        return bulkImporter.run(likes, like -> null, filmStorage::importLikes, false,
+                "Фильм или пользователь не найден");
+    }
+
+    // Рейтинг и жанры загружаемого фильма должны существовать; возвращает текст ошибки или null
+    private String checkReferences(Film film) {
+        try {
+            filmStorage.findMpaById(film.getMpa().getId());
+            for (Genre genre : film.getGenres()) {
+                filmStorage.findGenreById(genre.getId());
+            }
+            return null;
+        } catch (NotFoundException e) {
+            return e.getMessage();
+        }
+    }
+
     public Film put(Film film) {
         log.info("Получен запрос к эндпоинту PUT /films");
         return filmStorage.put(film);
     }
 
     public Film findById(Integer id) {
+        return findById(id, null);
+    }
+
+    public Film findById(Integer id, String view) {
         log.info("Получен запрос к эндпоинту GET /films/{id}");
-        return filmStorage.findById(id);
+        return filmStorage.findById(id, checkView(view));
+    }
+
+    // Строгие ETag строятся по версиям строк. Текущий тег для If-None-Match проверяется без загрузки
+    // жанров и лайков, а тег ответа строится по версиям, загруженным вместе с телом: фильм, отданный
+    // из кэша до его сброса, получает тег своей, прежней версии. null - фильма нет
+    public String filmTag(Integer id, String view) {
+        FilmView filmView = checkView(view);
+        OptionalLong version = filmStorage.findVersion(id);
+        return version.isPresent() ? filmTag(id, version.getAsLong(), filmView) : null;
+    }
+
+    public String filmTag(Film film, String view) {
+        return filmTag(film.getId(), film.getVersion(), checkView(view));
+    }
+
+    private static String filmTag(int id, long version, FilmView view) {
+        return "film-" + id + "-" + version + "-" + view;
+    }
+
+    public String popularTag(Integer count, String view) {
+        int checkedCount = checkCount(count);
+        return popularTag(checkedCount, checkView(view), filmStorage.findPopularVersions(checkedCount));
+    }
+
+    public String popularTag(Integer count, String view, List<Film> films) {
+        Map<Integer, Long> versions = new LinkedHashMap<>();
+        for (Film film : films) {
+            versions.put(film.getId(), film.getVersion());
+        }
+        return popularTag(checkCount(count), checkView(view), versions);
+    }
+
+    private static String popularTag(int count, FilmView view, Map<Integer, Long> versions) {
+        StringBuilder state = new StringBuilder("popular:").append(count).append(':').append(view);
+        for (Map.Entry<Integer, Long> version : versions.entrySet()) {
+            state.append(':').append(version.getKey()).append('-').append(version.getValue());
+        }
+        return "popular-" + DigestUtils.md5DigestAsHex(state.toString().getBytes(StandardCharsets.UTF_8));
     }
 
     public void like(Integer filmId, Integer userId) {
         log.info("Получен запрос к эндпоинту PUT /films/{id}/like/{userId}");
 
         Film film = filmStorage.findById(filmId);
+        // Проверка, существует ли такой пользователь. Если его нет, выбросит NotFoundException
         userStorage.findById(userId);
         filmStorage.like(film, userId);
     }
@@ -55,14 +155,19 @@ public class FilmService {
         log.info("Получен запрос к эндпоинту DELETE /films/{id}/like/{userId}");
 
         Film film = filmStorage.findById(filmId);
+        // Проверка, существует ли такой пользователь. Если его нет, выбросит NotFoundException
         userStorage.findById(userId);
         filmStorage.dislike(film, userId);
     }
 
     public List<Film> getMostPopular(Integer count) {
+        return getMostPopular(count, null);
+    }
+
+    public List<Film> getMostPopular(Integer count, String view) {
         log.info("Получен запрос к эндпоинту GET /films/popular");
 
-        return filmStorage.getMostPopular(count);
+        return filmStorage.getMostPopular(checkCount(count), checkView(view));
     }
 
     public Rating findMpaById(Integer mpaId) {
@@ -84,4 +189,19 @@ public class FilmService {
         log.info("Получен запрос к эндпоинту GET /genres");
         return filmStorage.findAllGenres();
     }
+
+    // Без параметра view фильмы возвращаются полностью, view=count - с количеством лайков вместо их списка
+    private FilmView checkView(String view) {
+        if (view == null) {
+            return FilmView.FULL;
+        }
+        return FilmView.fromValue(view).orElseThrow(() -> new IncorrectParameterException("view"));
+    }
+
+    private int checkCount(Integer count) {
+        if (count == null || count <= 0) {
+            throw new IncorrectParameterException("count");
+        }
+        return count;
+    }
 }
@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate.service;
+
+import ru.yandex.practicum.filmorate.exception.IncorrectParameterException;
+
+// Параметры постраничной выдачи GET /films и GET /users: страница - не больше limit элементов
+// с идентификатором больше after
+public final class Pagination {
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private Pagination() {
+    }
+
+    static int checkAfter(Integer after) {
+        if (after == null) {
+            return 0;
+        }
+        if (after < 0) {
+            throw new IncorrectParameterException("after");
+        }
+        return after;
+    }
+
+    static int checkLimit(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IncorrectParameterException("limit");
+        }
+        return limit;
+    }
+}
@@ -1,14 +1,20 @@
 package ru.yandex.practicum.filmorate.service;
 
+import com.fasterxml.jackson.databind.MappingIterator;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.ImportResult;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -19,17 +25,35 @@ public class UserService {
     @Getter
     @Qualifier("inDbUser")
     private UserDbStorage userStorage;
+    @Autowired
+    private BulkImporter bulkImporter;
 
     public Collection<User> findAll() {
         log.info("Получен запрос к эндпоинту GET /users");
         return userStorage.findAll();
     }
 
+    public List<User> findPage(Integer after, Integer limit) {
+        log.info("Получен запрос к эндпоинту GET /users?after={}&limit={}", after, limit);
+        return userStorage.findPage(Pagination.checkAfter(after), Pagination.checkLimit(limit));
+    }
+
     public User create(User user) {
         log.info("Получен запрос к эндпоинту POST /users");
         return userStorage.create(user);
     }
 
+    public ImportResult importUsers(MappingIterator<User> users) throws IOException {
+        log.info("Получен запрос к эндпоинту POST /users/import");
+        return bulkImporter.run(users, user -> null, userStorage::importUsers, true, null);
+    }
+
+    public ImportResult importFriends(MappingIterator<Friendship> friendships) throws IOException {
+        log.info("Получен запрос к эндпоинту POST /users/friends/import");
+        return bulkImporter.run(friendships, friendship -> null, userStorage::importFriends, false,
+                "Пользователь не найден");
+    }
+
     public User put(User user) {
         log.info("Получен запрос к эндпоинту PUT /users");
         return userStorage.put(user);
@@ -40,6 +64,25 @@ public class UserService {
         return userStorage.findById(id);
     }
 
+    // ETag пользователя и списка его друзей, см. FilmService.filmTag; null - пользователя нет
+    public String userTag(Integer id) {
+        OptionalLong version = userStorage.findVersion(id);
+        return version.isPresent() ? "user-" + id + "-" + version.getAsLong() : null;
+    }
+
+    // Список друзей меняется вместе с версией пользователя, а данные каждого друга - с его версией
+    public String friendsTag(Integer id) {
+        OptionalLong userVersion = userStorage.findVersion(id);
+        if (userVersion.isEmpty()) {
+            return null;
+        }
+        StringBuilder state = new StringBuilder("friends:").append(id).append('-').append(userVersion.getAsLong());
+        for (Map.Entry<Integer, Long> version : userStorage.findFriendVersions(id).entrySet()) {
+            state.append(':').append(version.getKey()).append('-').append(version.getValue());
+        }
+        return "friends-" + DigestUtils.md5DigestAsHex(state.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
     public void addFriend(Integer userId, Integer friendId) {
         log.info("Получен запрос к эндпоинту PUT /users/{id}/friends/{friendId}");
         userStorage.addFriend(userId, friendId);
@@ -0,0 +1,180 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.CompactIntSet;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Кэш фильмов по идентификатору с вытеснением по схеме Segmented LRU.
+// Новый фильм попадает в испытательный сегмент и переходит в защищенный при повторном обращении.
+// Размер ограничен суммарным весом: фильм весит 1 + количество лайков + количество жанров.
+// Кэш хранит и отдает копии, поэтому изменения фильма вызывающим кодом не попадают в кэш
+@Component
+@Slf4j
+public class FilmCache {
+    private static final int STRIPES = 64;
+
+    private final long maxWeight;
+    private final long maxProtectedWeight;
+    private final LinkedHashMap<Integer, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Integer, Entry> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private final long[] invalidations = new long[STRIPES];
+    private long probationWeight;
+    private long protectedWeight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public FilmCache(@Value("${filmorate.cache.films.max-weight:100000}") long maxWeight) {
+        this.maxWeight = maxWeight;
+        this.maxProtectedWeight = maxWeight * 4 / 5;
+    }
+
+    public synchronized Film get(int id) {
+        Entry entry = probation.remove(id);
+        if (entry != null) {
+            probationWeight -= entry.weight;
+            protectedSegment.put(id, entry);
+            protectedWeight += entry.weight;
+            demoteProtected();
+        } else {
+            entry = protectedSegment.get(id);
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return copy(entry.film);
+    }
+
+    // Значение для put(): если фильм изменился после вызова stamp(), загруженная копия в кэш не попадет
+    public synchronized long stamp(int id) {
+        return invalidations[stripe(id)];
+    }
+
+    public synchronized void put(Film film, long stamp) {
+        int id = film.getId();
+        if (invalidations[stripe(id)] != stamp || maxWeight <= 0) {
+            return;
+        }
+        remove(id);
+        Entry entry = new Entry(copy(film));
+        if (entry.weight > maxWeight) {
+            return;
+        }
+        probation.put(id, entry);
+        probationWeight += entry.weight;
+        evict();
+    }
+
+    public synchronized void invalidate(int id) {
+        invalidations[stripe(id)]++;
+        remove(id);
+    }
+
+    public synchronized void invalidateAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            invalidations[i]++;
+        }
+        probation.clear();
+        protectedSegment.clear();
+        probationWeight = 0;
+        protectedWeight = 0;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public synchronized int size() {
+        return probation.size() + protectedSegment.size();
+    }
+
+    public synchronized long weight() {
+        return probationWeight + protectedWeight;
+    }
+
+    private void remove(int id) {
+        Entry entry = probation.remove(id);
+        if (entry != null) {
+            probationWeight -= entry.weight;
+        }
+        entry = protectedSegment.remove(id);
+        if (entry != null) {
+            protectedWeight -= entry.weight;
+        }
+    }
+
+    // Самые старые фильмы защищенного сегмента возвращаются в испытательный
+    private void demoteProtected() {
+        Iterator<Map.Entry<Integer, Entry>> oldest = protectedSegment.entrySet().iterator();
+        while (protectedWeight > maxProtectedWeight && oldest.hasNext()) {
+            Map.Entry<Integer, Entry> demoted = oldest.next();
+            oldest.remove();
+            protectedWeight -= demoted.getValue().weight;
+            probation.put(demoted.getKey(), demoted.getValue());
+            probationWeight += demoted.getValue().weight;
+        }
+        evict();
+    }
+
+    private void evict() {
+        evictOldest(probation, true);
+        evictOldest(protectedSegment, false);
+    }
+
+    private void evictOldest(LinkedHashMap<Integer, Entry> segment, boolean isProbation) {
+        Iterator<Entry> oldest = segment.values().iterator();
+        while (probationWeight + protectedWeight > maxWeight && oldest.hasNext()) {
+            Entry evicted = oldest.next();
+            oldest.remove();
+            if (isProbation) {
+                probationWeight -= evicted.weight;
+            } else {
+                protectedWeight -= evicted.weight;
+            }
+            evictions.increment();
+        }
+    }
+
+    private static int stripe(int id) {
+        return Math.floorMod(id, STRIPES);
+    }
+
+    private static Film copy(Film film) {
+        Film copy = new Film(film.getName(), film.getDescription(), film.getReleaseDate(), film.getDuration());
+        copy.setId(film.getId());
+        copy.setVersion(film.getVersion());
+        copy.setMpa(film.getMpa());
+        copy.setGenres(new HashSet<>(film.getGenres()));
+        copy.setLikes(CompactIntSet.copyOf(film.getLikes()));
+        return copy;
+    }
+
+    private static final class Entry {
+        private final Film film;
+        private final long weight;
+
+        private Entry(Film film) {
+            this.film = film;
+            this.weight = 1L + film.getLikes().size() + film.getGenres().size();
+        }
+    }
+}
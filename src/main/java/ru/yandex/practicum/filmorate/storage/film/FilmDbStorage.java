@@ -3,102 +3,332 @@ package ru.yandex.practicum.filmorate.storage.film;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.metrics.RequestStats;
+import ru.yandex.practicum.filmorate.model.CompactIntSet;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmView;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.Rating;
 
+import javax.annotation.PostConstruct;
+import java.sql.*;
 import java.sql.Date;
-import java.sql.PreparedStatement;
-import java.sql.Statement;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Component("inDbFilm")
 @Slf4j
 @RequiredArgsConstructor
 public class FilmDbStorage implements FilmStorage {
+    // Запросы к фильмам собираются из констант при компиляции: строка SQL не строится заново
+    // на каждый вызов, а H2 находит уже разобранный запрос в кэше сессии (QUERY_CACHE_SIZE)
+    private static final String FILM_COLUMNS = "SELECT f.film_id AS film_id, " +
+            "f.film_name AS film_name, " +
+            "f.description AS description, " +
+            "f.release_date AS release_date, " +
+            "f.duration AS duration, " +
+            "fr.rating_id AS rating_id, " +
+            "f.version AS version";
+    private static final String LIKE_COUNT_COLUMN =
+            ", (SELECT COUNT(*) FROM films_likes AS fl WHERE fl.film_id = f.film_id) AS like_count";
+    private static final String EXPORT_COLUMNS =
+            ", (SELECT ARRAY_AGG(fg.genre_id ORDER BY fg.genre_id) FROM films_genres AS fg " +
+                    "WHERE fg.film_id = f.film_id) AS genre_ids, " +
+                    "(SELECT ARRAY_AGG(fl.user_id ORDER BY fl.user_id) FROM films_likes AS fl " +
+                    "WHERE fl.film_id = f.film_id) AS user_ids";
+    private static final String FROM_FILMS = " FROM films AS f LEFT JOIN films_rating AS fr ON f.film_id = fr.film_id ";
+    private static final String SELECT_FILMS = FILM_COLUMNS + FROM_FILMS;
+    private static final String SELECT_FILMS_WITH_LIKE_COUNT = FILM_COLUMNS + LIKE_COUNT_COLUMN + FROM_FILMS;
+    // Точечный поиск, полный просмотр и выборка по списку - отдельные запросы: условие вида
+    // CASE WHEN ? >= 0 THEN f.film_id = ? ELSE TRUE END не позволяет H2 выбрать первичный ключ,
+    // и поиск одного фильма превращается в просмотр всей таблицы
+    static final String FIND_FILM = SELECT_FILMS + "WHERE f.film_id = ?";
+    static final String FIND_FILM_WITH_LIKE_COUNT = SELECT_FILMS_WITH_LIKE_COUNT + "WHERE f.film_id = ?";
+    static final String FIND_ALL_FILMS = SELECT_FILMS + "ORDER BY f.film_id";
+    static final String FIND_ALL_FILMS_WITH_LIKE_COUNT = SELECT_FILMS_WITH_LIKE_COUNT + "ORDER BY f.film_id";
+    private static final String FILMS_PAGE = "WHERE f.film_id > ? ORDER BY f.film_id LIMIT ?";
+    private static final String EXPORT_FILMS = FILM_COLUMNS + EXPORT_COLUMNS + FROM_FILMS + "ORDER BY f.film_id";
+    private static final String INSERT_FILM =
+            "insert into films (film_name, description, release_date, duration) values (?, ?, ?, ?)";
+    private static final String INSERT_FILM_RATING = "insert into films_rating (rating_id, film_id) values (?, ?)";
+    private static final String INSERT_FILM_GENRE = "insert into films_genres (film_id, genre_id) values (?, ?)";
+    private static final String DELETE_FILM_GENRE = "delete from films_genres where film_id = ? and genre_id = ?";
 
     @Autowired
     private final JdbcTemplate jdbcTemplate;
+    private final PopularityLeaderboard leaderboard;
+    private final ReferenceDictionary dictionary;
+    private final FilmCache filmCache;
+    private final LikeWriteBehind likeWriteBehind;
+    @Value("${filmorate.export.fetch-size:1000}")
+    private int exportFetchSize;
+    // Транзакции хранилища идут через тот же DataSource, что и JdbcTemplate
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+    }
 
     @Override
     public Collection<Film> findAll() {
+        return findAll(FilmView.FULL);
+    }
+
+    public Collection<Film> findAll(FilmView view) {
         Collection<Film> films = new ArrayList<>();
-        SqlRowSet filmRows = jdbcTemplate.queryForRowSet(queryForGetFilms(), -1, -1);
+        SqlRowSet filmRows = jdbcTemplate.queryForRowSet(
+                view == FilmView.COUNT ? FIND_ALL_FILMS_WITH_LIKE_COUNT : FIND_ALL_FILMS);
         while (filmRows.next()) {
-            log.info("Найден фильм: {} {}", filmRows.getString("film_id"), filmRows.getString("film_name"));
-            Film film = new Film(
-                    filmRows.getString("film_name"),
-                    filmRows.getString("description"),
-                    filmRows.getDate("release_date").toLocalDate(),
-                    filmRows.getInt("duration"));
-            film.setMpa(new Rating(filmRows.getInt("rating_id"), filmRows.getString("rating_name")));
-            film.setId(filmRows.getInt("film_id"));
-            fillSetOfGenres(film);
-            fillSetOfLikes(film);
-            films.add(film);
+            films.add(mapFilm(filmRows, view));
+        }
+        fillGenresAndLikes(new FilmIndex(films), view, "");
+        RequestStats.rowsRead(films.size());
+        return films;
+    }
+
+    public List<Film> findPage(int after, int limit) {
+        return findPage(after, limit, FilmView.FULL);
+    }
+
+    public List<Film> findPage(int after, int limit, FilmView view) {
+        List<Film> films = new ArrayList<>();
+        SqlRowSet filmRows = jdbcTemplate.queryForRowSet(
+                view == FilmView.COUNT ? SELECT_FILMS_WITH_LIKE_COUNT + FILMS_PAGE : SELECT_FILMS + FILMS_PAGE,
+                after,
+                limit
+        );
+        while (filmRows.next()) {
+            films.add(mapFilm(filmRows, view));
+        }
+        RequestStats.rowsRead(films.size());
+        if (!films.isEmpty()) {
+            fillGenresAndLikes(
+                    new FilmIndex(films),
+                    view,
+                    "where film_id between ? and ?",
+                    films.get(0).getId(),
+                    films.get(films.size() - 1).getId()
+            );
         }
         return films;
     }
 
+    // Фильмы читаются курсором только вперед, жанры и лайки собираются в массивы в том же запросе,
+    // поэтому в памяти одновременно находится только текущий фильм
+    public void exportAll(Consumer<Film> action) {
+        jdbcTemplate.query(
+                connection -> {
+                    PreparedStatement pst = connection.prepareStatement(
+                            EXPORT_FILMS,
+                            ResultSet.TYPE_FORWARD_ONLY,
+                            ResultSet.CONCUR_READ_ONLY);
+                    pst.setFetchSize(exportFetchSize);
+                    return pst;
+                },
+                (RowCallbackHandler) rs -> {
+                    Film film = new Film(
+                            rs.getString("film_name"),
+                            rs.getString("description"),
+                            rs.getDate("release_date").toLocalDate(),
+                            rs.getInt("duration"));
+                    film.setId(rs.getInt("film_id"));
+                    film.setMpa(findRating(rs.getInt("rating_id")));
+                    for (Object genreId : toArray(rs.getArray("genre_ids"))) {
+                        dictionary.findGenreById((Integer) genreId).ifPresent(film.getGenres()::add);
+                    }
+                    for (Object userId : toArray(rs.getArray("user_ids"))) {
+                        film.getLikes().add((Integer) userId);
+                    }
+                    RequestStats.rowsRead(1);
+                    action.accept(film);
+                }
+        );
+    }
+
+    private static Object[] toArray(Array array) throws SQLException {
+        return array == null ? new Object[0] : (Object[]) array.getArray();
+    }
+
     @Override
     public Film create(Film film) {
         KeyHolder keyHolder = new GeneratedKeyHolder();
         jdbcTemplate.update(connection -> {
-            PreparedStatement pst = connection.prepareStatement(
-                    "insert into films (film_name, description, release_date, duration) values (?, ?, ?, ?)",
-                    Statement.RETURN_GENERATED_KEYS);
-            pst.setString(1, film.getName());
-            pst.setString(2, film.getDescription());
-            pst.setDate(3, Date.valueOf(film.getReleaseDate()));
-            pst.setInt(4, film.getDuration());
+            PreparedStatement pst = connection.prepareStatement(INSERT_FILM, Statement.RETURN_GENERATED_KEYS);
+            setFilmParameters(pst, film);
             return pst;
         }, keyHolder);
         int id = keyHolder.getKey().intValue();
         film.setId(id);
+        leaderboard.addFilm(id);
         createOrUpdateMpa(film, true);
         createOrUpdateGenres(film, true);
         fillSetOfLikes(film);
         return film;
     }
 
+    private static void setFilmParameters(PreparedStatement pst, Film film) throws SQLException {
+        pst.setString(1, film.getName());
+        pst.setString(2, film.getDescription());
+        pst.setDate(3, Date.valueOf(film.getReleaseDate()));
+        pst.setInt(4, film.getDuration());
+    }
+
+    // Массовая загрузка части фильмов одной транзакцией: фильмы, рейтинги и жанры записываются
+    // тремя пакетными запросами, идентификаторы фильмов берутся из сгенерированных ключей.
+    // Рейтинги и жанры должны быть проверены заранее, лайки загружаются отдельно через importLikes
+    public int[] importFilms(List<Film> films) {
+        int[] ids = transactionTemplate.execute(status -> {
+            int[] keys = insertFilms(films);
+            List<Object[]> ratings = new ArrayList<>(films.size());
+            List<Object[]> genres = new ArrayList<>();
+            for (int i = 0; i < keys.length; i++) {
+                ratings.add(new Object[]{films.get(i).getMpa().getId(), keys[i]});
+                Set<Integer> genreIds = new TreeSet<>();
+                for (Genre genre : films.get(i).getGenres()) {
+                    genreIds.add(genre.getId());
+                }
+                for (Integer genreId : genreIds) {
+                    genres.add(new Object[]{keys[i], genreId});
+                }
+            }
+            jdbcTemplate.batchUpdate(INSERT_FILM_RATING, ratings);
+            if (!genres.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_FILM_GENRE, genres);
+            }
+            return keys;
+        });
+        for (int id : ids) {
+            leaderboard.addFilm(id);
+        }
+        return ids;
+    }
+
+    private int[] insertFilms(List<Film> films) {
+        return jdbcTemplate.execute((ConnectionCallback<int[]>) connection -> {
+            try (PreparedStatement pst = connection.prepareStatement(INSERT_FILM, Statement.RETURN_GENERATED_KEYS)) {
+                for (Film film : films) {
+                    setFilmParameters(pst, film);
+                    pst.addBatch();
+                }
+                pst.executeBatch();
+                int[] keys = new int[films.size()];
+                int count = 0;
+                try (ResultSet rs = pst.getGeneratedKeys()) {
+                    while (rs.next()) {
+                        keys[count++] = rs.getInt(1);
+                    }
+                }
+                if (count != keys.length) {
+                    throw new IllegalStateException("Получено " + count + " ключей для " + keys.length + " фильмов");
+                }
+                return keys;
+            }
+        });
+    }
+
+    // Массовая загрузка части лайков одной транзакцией. Для каждого лайка возвращается 1, если фильм
+    // и пользователь существуют (повторный лайк не добавляет строку), и 0, если кого-то из них нет
+    public int[] importLikes(List<Like> likes) {
+        int[] found = new int[likes.size()];
+        LikeWriteBehind.LikeChanges changes = new LikeWriteBehind.LikeChanges();
+        transactionTemplate.executeWithoutResult(status -> {
+            Set<Integer> films = existingIds("films", "film_id",
+                    likes.stream().map(Like::getFilmId).collect(Collectors.toSet()));
+            Set<Integer> users = existingIds("users", "user_id",
+                    likes.stream().map(Like::getUserId).collect(Collectors.toSet()));
+            List<Object[]> rows = new ArrayList<>(likes.size());
+            for (int i = 0; i < found.length; i++) {
+                Like like = likes.get(i);
+                if (films.contains(like.getFilmId()) && users.contains(like.getUserId())) {
+                    found[i] = 1;
+                    rows.add(new Object[]{like.getFilmId(), like.getUserId(), like.getFilmId(), like.getUserId()});
+                }
+            }
+            if (!rows.isEmpty()) {
+                changes.collect(rows, jdbcTemplate.batchUpdate(LikeWriteBehind.INSERT_LIKE, rows), 1);
+                changes.complete(jdbcTemplate);
+            }
+        });
+        changes.applyTo(leaderboard);
+        changes.films().forEach(filmCache::invalidate);
+        return found;
+    }
+
+    private Set<Integer> existingIds(String table, String column, Set<Integer> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(jdbcTemplate.queryForList(
+                "select " + column + " from " + table + " " + idIn(column, ids.size()),
+                Integer.class,
+                ids.toArray()
+        ));
+    }
+
+    // Фильм, рейтинг и жанры записываются одной транзакцией, кэш сбрасывается после ее фиксации:
+    // чтение, которое началось раньше и загрузило прежний фильм, уже не сможет положить его в кэш
     @Override
     public Film put(Film film) {
         findById(film.getId());
-        jdbcTemplate.update(
-                "update films set film_name = ?, description = ?, release_date = ?, duration = ? where film_id = ?",
-                film.getName(),
-                film.getDescription(),
-                film.getReleaseDate(),
-                film.getDuration(),
-                film.getId()
-        );
-        createOrUpdateMpa(film, false);
-        createOrUpdateGenres(film, false);
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(
+                    "update films set film_name = ?, description = ?, release_date = ?, duration = ?, " +
+                            "version = version + 1 where film_id = ?",
+                    film.getName(),
+                    film.getDescription(),
+                    film.getReleaseDate(),
+                    film.getDuration(),
+                    film.getId()
+            );
+            createOrUpdateMpa(film, false);
+            createOrUpdateGenres(film, false);
+        });
+        filmCache.invalidate(film.getId());
         fillSetOfLikes(film);
         return film;
     }
 
     @Override
     public Film findById(Integer id) {
-        SqlRowSet filmRows = jdbcTemplate.queryForRowSet(queryForGetFilms(), id, id);
+        return findById(id, FilmView.FULL);
+    }
+
+    // В кэш попадают только полные фильмы; количество лайков берется из кэша, если фильм уже там
+    public Film findById(Integer id, FilmView view) {
+        Film cached = filmCache.get(id);
+        if (cached != null) {
+            if (view == FilmView.COUNT) {
+                cached.setLikeCount(cached.getLikes().size());
+                cached.setLikes(null);
+            }
+            return cached;
+        }
+        long stamp = filmCache.stamp(id);
+        SqlRowSet filmRows = jdbcTemplate.queryForRowSet(
+                view == FilmView.COUNT ? FIND_FILM_WITH_LIKE_COUNT : FIND_FILM, id);
         if (filmRows.next()) {
-            log.info("Найден фильм: {} {}", filmRows.getString("film_id"), filmRows.getString("film_name"));
-            Film film = new Film(
-                    filmRows.getString("film_name"),
-                    filmRows.getString("description"),
-                    filmRows.getDate("release_date").toLocalDate(),
-                    filmRows.getInt("duration"));
-            film.setMpa(new Rating(filmRows.getInt("rating_id"), filmRows.getString("rating_name")));
-            film.setId(filmRows.getInt("film_id"));
+            RequestStats.rowsRead(1);
+            Film film = mapFilm(filmRows, view);
             fillSetOfGenres(film);
-            fillSetOfLikes(film);
+            if (view == FilmView.FULL) {
+                fillSetOfLikes(film);
+                filmCache.put(film, stamp);
+            }
             return film;
         } else {
             log.info("Фильм с идентификатором {} не найден.", id);
@@ -108,55 +338,119 @@ public class FilmDbStorage implements FilmStorage {
 
     private void createOrUpdateMpa(Film film, boolean isNew) {
         if (!(film.getMpa() == null)) {
-            SqlRowSet ratingRows = jdbcTemplate.queryForRowSet("select * from rating where rating_id = ?", film.getMpa().getId());
-            if (ratingRows.next()) {
+            Optional<Rating> rating = dictionary.findMpaById(film.getMpa().getId());
+            if (rating.isPresent()) {
                 String sqlQueryString;
                 if (isNew) {    // это создание фильма
-                    sqlQueryString = "insert into films_rating (rating_id, film_id) values (?, ?)";
+                    sqlQueryString = INSERT_FILM_RATING;
                 } else {    // это обновление фильма
                     sqlQueryString = "update films_rating set rating_id = ? where film_id = ?";
                 }
                 jdbcTemplate.update(
                         sqlQueryString,
-                        ratingRows.getInt("rating_id"),
+                        rating.get().getId(),
                         film.getId()
                 );
-                film.getMpa().setName(ratingRows.getString("rating_name"));
+                film.setMpa(rating.get());
             }
         }
     }
 
+    // Жанры записываются разницей с текущими строками: добавленные и удаленные жанры - двумя пакетными
+    // запросами, без изменений ничего не пишется. Неизвестные жанры пропускаются, а Film.genres
+    // заполняется из справочника без повторного чтения
     private void createOrUpdateGenres(Film film, boolean isNew) {
-        if (!isNew) {
-            jdbcTemplate.update(
-                    "delete from films_genres where film_id = ?",
-                    film.getId()
-            );
+        Set<Genre> genres = new HashSet<>();
+        for (Genre genre : film.getGenres()) {
+            dictionary.findGenreById(genre.getId()).ifPresent(genres::add);
         }
-        String filmsGenres = film.getGenres().stream().map(Genre::getId).collect(Collectors.toSet()).toString().replace("[", "").replace("]", "");
-        if (!filmsGenres.isBlank()) {
-            jdbcTemplate.update(
-                    "insert into films_genres (film_id, genre_id) select f.film_id, g.genre_id from films as f join genres as g where f.film_id = ? and g.genre_id in (" + filmsGenres + ")",
-                    film.getId()
-            );
-        }
-        SqlRowSet filmGenreRows = jdbcTemplate.queryForRowSet(
-                "select g.genre_id, g.genre_name from films_genres as fg left join genres as g on g.genre_id = fg.genre_id where fg.film_id = ?",
+        Set<Integer> current = isNew ? Collections.emptySet() : new HashSet<>(jdbcTemplate.queryForList(
+                "select genre_id from films_genres where film_id = ?",
+                Integer.class,
                 film.getId()
+        ));
+        List<Object[]> added = new ArrayList<>();
+        Set<Integer> kept = new HashSet<>();
+        for (Genre genre : genres) {
+            kept.add(genre.getId());
+            if (!current.contains(genre.getId())) {
+                added.add(new Object[]{film.getId(), genre.getId()});
+            }
+        }
+        List<Object[]> removed = new ArrayList<>();
+        for (Integer genreId : current) {
+            if (!kept.contains(genreId)) {
+                removed.add(new Object[]{film.getId(), genreId});
+            }
+        }
+        if (!removed.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_FILM_GENRE, removed);
+        }
+        if (!added.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_FILM_GENRE, added);
+        }
+        film.setGenres(genres);
+    }
+
+    private Film mapFilm(SqlRowSet filmRows, FilmView view) {
+        Film film = new Film(
+                filmRows.getString("film_name"),
+                filmRows.getString("description"),
+                filmRows.getDate("release_date").toLocalDate(),
+                filmRows.getInt("duration"));
+        film.setMpa(findRating(filmRows.getInt("rating_id")));
+        film.setId(filmRows.getInt("film_id"));
+        film.setVersion(filmRows.getLong("version"));
+        if (view == FilmView.COUNT) {
+            film.setLikes(null);
+            film.setLikeCount(filmRows.getInt("like_count"));
+        }
+        return film;
+    }
+
+    private Rating findRating(int ratingId) {
+        return dictionary.findMpaById(ratingId).orElseGet(() -> new Rating(ratingId, null));
+    }
+
+    // Жанры и лайки фильмов загружаются двумя запросами вне зависимости от количества фильмов.
+    // filmCondition ограничивает выборку по колонке film_id, пустая строка - все фильмы.
+    // В представлении COUNT лайки уже посчитаны в основном запросе и не загружаются
+    private void fillGenresAndLikes(FilmIndex index, FilmView view, String filmCondition, Object... args) {
+        jdbcTemplate.query(
+                "select film_id, genre_id from films_genres " + filmCondition,
+                (RowCallbackHandler) rs -> {
+                    Film film = index.get(rs.getInt("film_id"));
+                    if (film != null) {
+                        dictionary.findGenreById(rs.getInt("genre_id")).ifPresent(film.getGenres()::add);
+                    }
+                },
+                args
         );
-        Set<Genre> filmGenres = new HashSet<>();
-        while (filmGenreRows.next()) {
-            filmGenres.add(new Genre(filmGenreRows.getInt("genre_id"), filmGenreRows.getString("genre_name")));
+        if (view == FilmView.COUNT) {
+            return;
         }
-        film.setGenres(filmGenres);
+        jdbcTemplate.query(
+                "select film_id, user_id from films_likes " + filmCondition + " order by film_id, user_id",
+                (RowCallbackHandler) rs -> {
+                    Film film = index.get(rs.getInt("film_id"));
+                    if (film != null) {
+                        film.getLikes().add(rs.getInt("user_id"));
+                    }
+                },
+                args
+        );
+    }
+
+    private static String idIn(String column, int size) {
+        return "where " + column + " in (" + String.join(", ", Collections.nCopies(size, "?")) + ")";
     }
 
     private void fillSetOfLikes(Film film) {
         SqlRowSet filmLikesRows = jdbcTemplate.queryForRowSet(
-                "select user_id from films_likes where film_id = ?",
+                "select user_id from films_likes where film_id = ? order by user_id",
                 film.getId()
         );
-        Set<Integer> filmLikes = new HashSet<>();
+        Set<Integer> filmLikes = new CompactIntSet();
         while (filmLikesRows.next()) {
             filmLikes.add(filmLikesRows.getInt("user_id"));
         }
@@ -165,27 +459,18 @@ public class FilmDbStorage implements FilmStorage {
 
     private void fillSetOfGenres(Film film) {
         SqlRowSet filmGenreRows = jdbcTemplate.queryForRowSet(
-                "select g.genre_id, g.genre_name from films_genres as fg left join genres as g on g.genre_id = fg.genre_id where fg.film_id = ?",
+                "select genre_id from films_genres where film_id = ?",
                 film.getId()
         );
         Set<Genre> filmGenres = new HashSet<>();
         while (filmGenreRows.next()) {
-            filmGenres.add(new Genre(filmGenreRows.getInt("genre_id"), filmGenreRows.getString("genre_name")));
+            dictionary.findGenreById(filmGenreRows.getInt("genre_id")).ifPresent(filmGenres::add);
         }
         film.setGenres(filmGenres);
     }
 
-    private String queryForGetFilms() {
-        return "SELECT f.film_id AS film_id, " +
-                "f.film_name AS film_name, " +
-                "f.description AS description, " +
-                "f.release_date AS release_date, " +
-                "f.duration AS duration, " +
-                "r.rating_id AS rating_id, " +
-                "r.rating_name AS rating_name " +
-                "FROM films AS f LEFT JOIN films_rating AS fr ON f.film_id = fr.film_id " +
-                "LEFT JOIN rating AS r ON fr.rating_id = r.rating_id " +
-                "WHERE CASE WHEN ? >= 0 THEN f.film_id = ? ELSE TRUE END";
+    static String findFilms(FilmView view, int size) {
+        return (view == FilmView.COUNT ? SELECT_FILMS_WITH_LIKE_COUNT : SELECT_FILMS) + idIn("f.film_id", size);
     }
 
     public void like(Film film, Integer userId) {
@@ -193,11 +478,33 @@ public class FilmDbStorage implements FilmStorage {
         likes.add(userId);
         film.setLikes(likes);
 
-        jdbcTemplate.update(
-                "insert into films_likes (film_id, user_id) values (?, ?)",
-                film.getId(),
-                userId
-        );
+        if (likeWriteBehind.isEnabled()) {
+            likeWriteBehind.like(film.getId(), userId);
+            log.info("К фильму '{}' добавлен лайк, запись отложена", film.getName());
+            return;
+        }
+        // Лайк и новая версия фильма фиксируются вместе: ETag не может остаться прежним при новом лайке
+        int inserted = transactionTemplate.execute(status -> {
+            int rows;
+            try {
+                // Повторный лайк того же пользователя не добавляет строку
+                rows = jdbcTemplate.update(
+                        LikeWriteBehind.INSERT_LIKE,
+                        film.getId(),
+                        userId,
+                        film.getId(),
+                        userId
+                );
+            } catch (DuplicateKeyException e) {
+                return 0;
+            }
+            if (rows > 0) {
+                jdbcTemplate.update(LikeWriteBehind.BUMP_FILM_VERSION, film.getId());
+            }
+            return rows;
+        });
+        leaderboard.changeLikes(film.getId(), inserted);
+        filmCache.invalidate(film.getId());
 
         log.info("К фильму '{}' добавлен лайк", film.getName());
     }
@@ -207,73 +514,109 @@ public class FilmDbStorage implements FilmStorage {
         likes.remove(userId);
         film.setLikes(likes);
 
-        jdbcTemplate.update(
-                "delete from films_likes where film_id = ? and user_id = ?",
-                film.getId(),
-                userId
-        );
+        if (likeWriteBehind.isEnabled()) {
+            likeWriteBehind.dislike(film.getId(), userId);
+            log.info("С фильма '{}' снят лайк, запись отложена", film.getName());
+            return;
+        }
+        int deleted = transactionTemplate.execute(status -> {
+            int rows = jdbcTemplate.update(
+                    LikeWriteBehind.DELETE_LIKE,
+                    film.getId(),
+                    userId
+            );
+            if (rows > 0) {
+                jdbcTemplate.update(LikeWriteBehind.BUMP_FILM_VERSION, film.getId());
+            }
+            return rows;
+        });
+        leaderboard.changeLikes(film.getId(), -deleted);
+        filmCache.invalidate(film.getId());
 
         log.info("С фильма '{}' снят лайк", film.getName());
     }
 
     public List<Film> getMostPopular(Integer count) {
-        List<Film> popular = new ArrayList<>();
-        SqlRowSet likesRows = jdbcTemplate.queryForRowSet(
-                "SELECT f.film_id, count(fl.user_id) FROM films AS f LEFT JOIN films_likes AS fl ON f.film_id = fl.film_id GROUP BY f.film_id ORDER BY count(fl.user_id) DESC LIMIT ?",
-                count
-        );
-        while (likesRows.next()) {
-            popular.add(findById(likesRows.getInt("film_id")));
+        return getMostPopular(count, FilmView.FULL);
+    }
+
+    public List<Film> getMostPopular(Integer count, FilmView view) {
+        return findByIds(leaderboard.top(count), view);
+    }
+
+    // Фильмы возвращаются в порядке переданных идентификаторов, отсутствующие пропускаются
+    public List<Film> findByIds(List<Integer> ids, FilmView view) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Object[] args = ids.toArray();
+        List<Film> films = new ArrayList<>();
+        SqlRowSet filmRows = jdbcTemplate.queryForRowSet(findFilms(view, args.length), args);
+        while (filmRows.next()) {
+            films.add(mapFilm(filmRows, view));
         }
-        return popular;
+        RequestStats.rowsRead(films.size());
+        FilmIndex index = new FilmIndex(films);
+        fillGenresAndLikes(index, view, idIn("film_id", args.length), args);
+
+        List<Film> found = new ArrayList<>(films.size());
+        for (Integer id : ids) {
+            Film film = index.get(id);
+            if (film != null) {
+                found.add(film);
+            }
+        }
+        return found;
+    }
+
+    // Версия строки фильма растет при каждом изменении фильма, его жанров, рейтинга или лайков
+    public OptionalLong findVersion(int id) {
+        List<Long> versions = jdbcTemplate.queryForList(
+                "select version from films where film_id = ?", Long.class, id);
+        return versions.isEmpty() ? OptionalLong.empty() : OptionalLong.of(versions.get(0));
+    }
+
+    // Версии самых популярных фильмов в порядке рейтинга популярности, без загрузки самих фильмов
+    public Map<Integer, Long> findPopularVersions(int count) {
+        List<Integer> top = leaderboard.top(count);
+        Map<Integer, Long> found = new HashMap<>();
+        if (!top.isEmpty()) {
+            jdbcTemplate.query(
+                    "select film_id, version from films " + idIn("film_id", top.size()),
+                    (RowCallbackHandler) rs -> found.put(rs.getInt("film_id"), rs.getLong("version")),
+                    top.toArray()
+            );
+        }
+        Map<Integer, Long> versions = new LinkedHashMap<>();
+        for (Integer id : top) {
+            Long version = found.get(id);
+            if (version != null) {
+                versions.put(id, version);
+            }
+        }
+        return versions;
     }
 
     public Rating findMpaById(Integer mpaId) {
-        SqlRowSet mpaRows = jdbcTemplate.queryForRowSet(
-                "SELECT * FROM rating WHERE rating_id = ?",
-                mpaId
-        );
-        if (mpaRows.next()) {
-            return new Rating(mpaRows.getInt("rating_id"), mpaRows.getString("rating_name"));
-        } else {
+        return dictionary.findMpaById(mpaId).orElseThrow(() -> {
             log.info("Рейтинг с идентификатором {} не найден.", mpaId);
-            throw new NotFoundException("Рейтинг не найден");
-        }
+            return new NotFoundException("Рейтинг не найден");
+        });
     }
 
     public List<Rating> findAllMpa() {
-        List<Rating> mpa = new ArrayList<>();
-        SqlRowSet mpaRows = jdbcTemplate.queryForRowSet(
-                "SELECT * FROM rating"
-        );
-        while (mpaRows.next()) {
-            mpa.add(new Rating(mpaRows.getInt("rating_id"), mpaRows.getString("rating_name")));
-        }
-        return mpa;
+        return dictionary.findAllMpa();
     }
 
     public Genre findGenreById(Integer genreId) {
-        SqlRowSet genreRows = jdbcTemplate.queryForRowSet(
-                "SELECT * FROM genres WHERE genre_id = ?",
-                genreId
-        );
-        if (genreRows.next()) {
-            return new Genre(genreRows.getInt("genre_id"), genreRows.getString("genre_name"));
-        } else {
+        return dictionary.findGenreById(genreId).orElseThrow(() -> {
             log.info("Жанр с идентификатором {} не найден.", genreId);
-            throw new NotFoundException("Жанр не найден");
-        }
+            return new NotFoundException("Жанр не найден");
+        });
     }
 
     public List<Genre> findAllGenres() {
-        List<Genre> genres = new ArrayList<>();
-        SqlRowSet genreRows = jdbcTemplate.queryForRowSet(
-                "SELECT * FROM genres"
-        );
-        while (genreRows.next()) {
-            genres.add(new Genre(genreRows.getInt("genre_id"), genreRows.getString("genre_name")));
-        }
-        return genres;
+        return dictionary.findAllGenres();
     }
 
     public Optional<Film> findFilmById(int i) {
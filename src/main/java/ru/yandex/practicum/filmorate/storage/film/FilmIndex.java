@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+// Поиск загруженного фильма по идентификатору: отсортированный массив int вместо Map<Integer, Film>
+final class FilmIndex {
+    private final int[] ids;
+    private final Film[] films;
+
+    FilmIndex(Collection<Film> source) {
+        films = source.toArray(new Film[0]);
+        Arrays.sort(films, Comparator.comparingInt(Film::getId));
+        ids = new int[films.length];
+        for (int i = 0; i < films.length; i++) {
+            ids[i] = films[i].getId();
+        }
+    }
+
+    Film get(int id) {
+        int position = Arrays.binarySearch(ids, id);
+        return position >= 0 ? films[position] : null;
+    }
+}
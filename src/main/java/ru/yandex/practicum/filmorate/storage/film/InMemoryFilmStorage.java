@@ -1,35 +1,50 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
-import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CompactIntSet;
 import ru.yandex.practicum.filmorate.model.Film;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
 
+// Хранилище безопасно для одновременных запросов: фильм и его лайки хранятся одной неизменяемой записью,
+// которая заменяется целиком атомарной операцией ConcurrentHashMap, поэтому каждая выданная копия фильма
+// соответствует одному моменту. Список фильмов целиком не снимок одного момента: фильм, измененный
+// во время обхода, попадает в список в прежнем или в новом виде
 @Component("inMemoryFilm")
 @Slf4j
 public class InMemoryFilmStorage implements FilmStorage {
-    private final Map<Integer, Film> films = new HashMap<>();
-    @Getter
-    private static Integer id = 0;
-
-    private static Integer getNextId() {
-        return ++id;
-    }
+    private final Map<Integer, Entry> films = new ConcurrentHashMap<>();
+    private final AtomicInteger id = new AtomicInteger();
 
     @Override
     public Collection<Film> findAll() {
-        return films.values();
+        return films.values().stream()
+                .sorted(Comparator.comparingInt(Entry::id))
+                .map(Entry::toFilm)
+                .collect(Collectors.toList());
+    }
+
+    public List<Film> findPage(int after, int limit) {
+        return films.values().stream()
+                .filter(entry -> entry.id() > after)
+                .sorted(Comparator.comparingInt(Entry::id))
+                .limit(limit)
+                .map(Entry::toFilm)
+                .collect(Collectors.toList());
     }
 
     @Override
     public Film create(Film film) {
-        film.setId(getNextId());
-        films.put(film.getId(), film);
+        film.setId(id.incrementAndGet());
+        films.put(film.getId(), new Entry(copy(film), new CompactIntSet()));
+        film.setLikes(new CompactIntSet());
         log.info("Фильм \"'{}'\" создан", film.getName());
 
         return film;
@@ -37,10 +52,8 @@ public class InMemoryFilmStorage implements FilmStorage {
 
     @Override
     public Film put(Film film) {
-        if (!films.containsKey(film.getId())) {
-            throw new NotFoundException("Фильм не найден");
-        }
-        films.put(film.getId(), film);
+        Entry entry = update(film.getId(), current -> new Entry(copy(film), current.likes));
+        film.setLikes(CompactIntSet.copyOf(entry.likes));
         log.info("Фильм \"'{}'\" изменен", film.getName());
 
         return film;
@@ -48,9 +61,74 @@ public class InMemoryFilmStorage implements FilmStorage {
 
     @Override
     public Film findById(Integer id) {
-        if (!films.containsKey(id)) {
+        Entry entry = films.get(id);
+        if (entry == null) {
+            throw new NotFoundException("Фильм не найден");
+        }
+        return entry.toFilm();
+    }
+
+    public void like(Film film, Integer userId) {
+        update(film.getId(), current -> current.withLikes(likes -> likes.add(userId)));
+        film.getLikes().add(userId);
+        log.info("К фильму '{}' добавлен лайк", film.getName());
+    }
+
+    public void dislike(Film film, Integer userId) {
+        update(film.getId(), current -> current.withLikes(likes -> likes.remove(userId)));
+        film.getLikes().remove(userId);
+        log.info("С фильма '{}' снят лайк", film.getName());
+    }
+
+    public List<Film> getMostPopular(Integer count) {
+        return films.values().stream()
+                .sorted(Comparator.comparingInt((Entry entry) -> entry.likes.size()).reversed()
+                        .thenComparingInt(Entry::id))
+                .limit(count)
+                .map(Entry::toFilm)
+                .collect(Collectors.toList());
+    }
+
+    private Entry update(int filmId, UnaryOperator<Entry> change) {
+        Entry entry = films.computeIfPresent(filmId, (key, current) -> change.apply(current));
+        if (entry == null) {
             throw new NotFoundException("Фильм не найден");
         }
-        return films.get(id);
+        return entry;
+    }
+
+    private static Film copy(Film film) {
+        Film copy = new Film(film.getName(), film.getDescription(), film.getReleaseDate(), film.getDuration());
+        copy.setId(film.getId());
+        copy.setMpa(film.getMpa());
+        copy.setGenres(new HashSet<>(film.getGenres()));
+        return copy;
+    }
+
+    // Ни фильм, ни множество лайков записи после создания не изменяются
+    private static final class Entry {
+        private final Film film;
+        private final CompactIntSet likes;
+
+        private Entry(Film film, CompactIntSet likes) {
+            this.film = film;
+            this.likes = likes;
+        }
+
+        private int id() {
+            return film.getId();
+        }
+
+        private Entry withLikes(Consumer<CompactIntSet> change) {
+            CompactIntSet changed = CompactIntSet.copyOf(likes);
+            change.accept(changed);
+            return new Entry(film, changed);
+        }
+
+        private Film toFilm() {
+            Film copy = copy(film);
+            copy.setLikes(CompactIntSet.copyOf(likes));
+            return copy;
+        }
     }
 }
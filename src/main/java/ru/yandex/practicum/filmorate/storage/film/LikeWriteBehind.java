@@ -0,0 +1,275 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Отложенная запись лайков: события лайка и снятия лайка копятся в ограниченной очереди
+// и записываются в базу пакетами - при накоплении batchSize событий или раз в flushInterval.
+// Повторные события одной пары (фильм, пользователь) схлопываются, побеждает последнее.
+// Пакет записывается одной транзакцией; рейтинг популярности и кэш фильмов обновляются после
+// ее фиксации. Если запись не удалась, пакет возвращается в очередь и будет записан повторно.
+// Принятые, но еще не записанные события теряются при аварийной остановке; при штатной
+// остановке очередь дописывается. Если очередь заполнена, вызывающий поток сам записывает
+// накопленный пакет, прежде чем добавить событие
+@Component
+@Slf4j
+public class LikeWriteBehind {
+    static final String INSERT_LIKE = "insert into films_likes (film_id, user_id) select ?, ? " +
+            "where not exists (select 1 from films_likes where film_id = ? and user_id = ?)";
+    static final String DELETE_LIKE = "delete from films_likes where film_id = ? and user_id = ?";
+    // Версия фильма растет при каждом изменении его лайков
+    static final String BUMP_FILM_VERSION = "update films set version = version + 1 where film_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PopularityLeaderboard leaderboard;
+    private final FilmCache filmCache;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int capacity;
+    private final long flushIntervalMs;
+
+    // Ключ - пара (фильм, пользователь), значение - true для лайка и false для снятия лайка
+    private LinkedHashMap<Long, Boolean> pending = new LinkedHashMap<>();
+    // Пакеты записываются по одному и в порядке их формирования
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private ScheduledExecutorService executor;
+
+    public LikeWriteBehind(JdbcTemplate jdbcTemplate,
+                           PopularityLeaderboard leaderboard,
+                           FilmCache filmCache,
+                           @Value("${filmorate.likes.write-behind.enabled:false}") boolean enabled,
+                           @Value("${filmorate.likes.write-behind.batch-size:500}") int batchSize,
+                           @Value("${filmorate.likes.write-behind.capacity:10000}") int capacity,
+                           @Value("${filmorate.likes.write-behind.flush-interval-ms:100}") long flushIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        this.leaderboard = leaderboard;
+        this.filmCache = filmCache;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.capacity = Math.max(capacity, batchSize);
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "likes-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Отложенная запись лайков включена: пакет {}, очередь {}, интервал {} мс",
+                batchSize, capacity, flushIntervalMs);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        flush();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void like(int filmId, int userId) {
+        offer(filmId, userId, true);
+    }
+
+    public void dislike(int filmId, int userId) {
+        offer(filmId, userId, false);
+    }
+
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    private void offer(int filmId, int userId, boolean like) {
+        long key = key(filmId, userId);
+        while (true) {
+            int size;
+            synchronized (this) {
+                if (pending.size() < capacity || pending.containsKey(key)) {
+                    // Событие становится последним в порядке записи
+                    pending.remove(key);
+                    pending.put(key, like);
+                    size = pending.size();
+                } else {
+                    size = -1;
+                }
+            }
+            if (size < 0) {
+                flush();
+                continue;
+            }
+            if (size >= batchSize && executor != null) {
+                executor.execute(this::flushQuietly);
+            }
+            return;
+        }
+    }
+
+    // Записывает все накопленные события; возвращает количество записанных событий
+    public int flush() {
+        flushLock.lock();
+        try {
+            LinkedHashMap<Long, Boolean> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return 0;
+                }
+                batch = pending;
+                pending = new LinkedHashMap<>();
+            }
+            try {
+                write(batch);
+            } catch (RuntimeException e) {
+                restore(batch);
+                throw e;
+            }
+            return batch.size();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Пакет возвращается в начало очереди; события, принятые во время записи, новее и остаются
+    private synchronized void restore(LinkedHashMap<Long, Boolean> batch) {
+        for (Map.Entry<Long, Boolean> event : pending.entrySet()) {
+            batch.remove(event.getKey());
+            batch.put(event.getKey(), event.getValue());
+        }
+        pending = batch;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Не удалось записать пакет лайков", e);
+        }
+    }
+
+    private void write(Map<Long, Boolean> batch) {
+        List<Object[]> likes = new ArrayList<>();
+        List<Object[]> dislikes = new ArrayList<>();
+        for (Map.Entry<Long, Boolean> event : batch.entrySet()) {
+            int filmId = filmId(event.getKey());
+            int userId = userId(event.getKey());
+            if (event.getValue()) {
+                likes.add(new Object[]{filmId, userId, filmId, userId});
+            } else {
+                dislikes.add(new Object[]{filmId, userId});
+            }
+        }
+        // Пары в пакете уникальны, поэтому порядок между лайками и снятиями лайков не важен
+        LikeChanges changes = new LikeChanges();
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!likes.isEmpty()) {
+                changes.collect(likes, jdbcTemplate.batchUpdate(INSERT_LIKE, likes), 1);
+            }
+            if (!dislikes.isEmpty()) {
+                changes.collect(dislikes, jdbcTemplate.batchUpdate(DELETE_LIKE, dislikes), -1);
+            }
+            changes.complete(jdbcTemplate);
+        });
+        changes.applyTo(leaderboard);
+        for (Long key : batch.keySet()) {
+            filmCache.invalidate(filmId(key));
+        }
+        log.debug("Записан пакет лайков: {} событий", batch.size());
+    }
+
+    // Итог пакетной записи лайков. Драйвер может вернуть для строки пакета SUCCESS_NO_INFO (-2) -
+    // выполнено, но неизвестно, изменилась ли строка. Для таких фильмов количество лайков
+    // не складывается из изменений, а перечитывается из базы в той же транзакции
+    static final class LikeChanges {
+        // Фильм - изменение количества лайков; есть все фильмы с измененными строками, даже при нулевой сумме
+        private final Map<Integer, Integer> deltas = new HashMap<>();
+        private final Set<Integer> unknown = new HashSet<>();
+        private final Map<Integer, Integer> recounted = new HashMap<>();
+
+        void collect(List<Object[]> rows, int[] updated, int sign) {
+            for (int i = 0; i < updated.length; i++) {
+                Integer filmId = (Integer) rows.get(i)[0];
+                if (updated[i] > 0) {
+                    deltas.merge(filmId, sign, Integer::sum);
+                } else if (updated[i] == Statement.SUCCESS_NO_INFO) {
+                    unknown.add(filmId);
+                }
+            }
+        }
+
+        // Вызывается внутри транзакции записи, после всех пакетов
+        void complete(JdbcTemplate jdbcTemplate) {
+            for (Integer filmId : unknown) {
+                recounted.put(filmId, jdbcTemplate.queryForObject(
+                        "select count(*) from films_likes where film_id = ?", Integer.class, filmId));
+            }
+            Set<Integer> changed = new HashSet<>(deltas.keySet());
+            changed.addAll(unknown);
+            bumpVersions(jdbcTemplate, changed);
+        }
+
+        // Вызывается после фиксации транзакции
+        void applyTo(PopularityLeaderboard leaderboard) {
+            for (Map.Entry<Integer, Integer> delta : deltas.entrySet()) {
+                if (!recounted.containsKey(delta.getKey())) {
+                    leaderboard.changeLikes(delta.getKey(), delta.getValue());
+                }
+            }
+            recounted.forEach(leaderboard::setLikes);
+        }
+
+        Set<Integer> films() {
+            Set<Integer> films = new HashSet<>(deltas.keySet());
+            films.addAll(unknown);
+            return films;
+        }
+    }
+
+    private static void bumpVersions(JdbcTemplate jdbcTemplate, Collection<Integer> filmIds) {
+        if (filmIds.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(filmIds.size());
+        for (Integer filmId : filmIds) {
+            rows.add(new Object[]{filmId});
+        }
+        jdbcTemplate.batchUpdate(BUMP_FILM_VERSION, rows);
+    }
+
+    private static long key(int filmId, int userId) {
+        return ((long) filmId << 32) | (userId & 0xFFFFFFFFL);
+    }
+
+    private static int filmId(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int userId(long key) {
+        return (int) key;
+    }
+}
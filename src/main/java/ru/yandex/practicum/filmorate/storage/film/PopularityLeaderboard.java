@@ -0,0 +1,112 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+
+// Рейтинг фильмов по количеству лайков, который поддерживается при каждом лайке и снятии лайка.
+// Фильмы сгруппированы по количеству лайков, поэтому первые N фильмов отдаются без обращения к базе
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class PopularityLeaderboard {
+    private static final String LIKES_COUNT_QUERY = "SELECT f.film_id, count(fl.user_id) AS likes_count " +
+            "FROM films AS f LEFT JOIN films_likes AS fl ON f.film_id = fl.film_id GROUP BY f.film_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Integer, Integer> likesByFilm = new HashMap<>();
+    private final NavigableMap<Integer, NavigableSet<Integer>> filmsByLikes = new TreeMap<>(Comparator.reverseOrder());
+
+    @PostConstruct
+    public synchronized void rebuild() {
+        likesByFilm.clear();
+        filmsByLikes.clear();
+        loadLikesCount().forEach(this::put);
+        log.info("Рейтинг популярности построен: {} фильмов", likesByFilm.size());
+    }
+
+    public synchronized void addFilm(int filmId) {
+        if (!likesByFilm.containsKey(filmId)) {
+            put(filmId, 0);
+        }
+    }
+
+    public synchronized void changeLikes(int filmId, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        Integer likes = likesByFilm.get(filmId);
+        if (likes == null) {
+            likes = 0;
+        } else {
+            remove(filmId, likes);
+        }
+        put(filmId, Math.max(0, likes + delta));
+    }
+
+    // Количество лайков, пересчитанное в базе
+    public synchronized void setLikes(int filmId, int likes) {
+        Integer current = likesByFilm.get(filmId);
+        if (current != null) {
+            remove(filmId, current);
+        }
+        put(filmId, likes);
+    }
+
+    public synchronized List<Integer> top(int count) {
+        List<Integer> top = new ArrayList<>(Math.min(count, likesByFilm.size()));
+        for (NavigableSet<Integer> films : filmsByLikes.values()) {
+            for (Integer filmId : films) {
+                if (top.size() == count) {
+                    return top;
+                }
+                top.add(filmId);
+            }
+        }
+        return top;
+    }
+
+    // Сверка с количеством лайков, посчитанным в базе
+    public boolean isConsistent() {
+        Map<Integer, Integer> expected = loadLikesCount();
+        Map<Integer, Integer> actual;
+        synchronized (this) {
+            actual = new HashMap<>(likesByFilm);
+        }
+        if (expected.equals(actual)) {
+            return true;
+        }
+        Set<Integer> filmIds = new TreeSet<>(expected.keySet());
+        filmIds.addAll(actual.keySet());
+        filmIds.removeIf(id -> Objects.equals(expected.get(id), actual.get(id)));
+        log.warn("Рейтинг популярности расходится с базой для фильмов {}", filmIds);
+        return false;
+    }
+
+    private Map<Integer, Integer> loadLikesCount() {
+        Map<Integer, Integer> likesCount = new HashMap<>();
+        jdbcTemplate.query(
+                LIKES_COUNT_QUERY,
+                (RowCallbackHandler) rs -> likesCount.put(rs.getInt("film_id"), rs.getInt("likes_count"))
+        );
+        return likesCount;
+    }
+
+    private void put(int filmId, int likes) {
+        likesByFilm.put(filmId, likes);
+        filmsByLikes.computeIfAbsent(likes, k -> new TreeSet<>()).add(filmId);
+    }
+
+    private void remove(int filmId, int likes) {
+        NavigableSet<Integer> films = filmsByLikes.get(likes);
+        films.remove(filmId);
+        if (films.isEmpty()) {
+            filmsByLikes.remove(likes);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Optional;
+
+// Справочники жанров и рейтингов MPA, загруженные в память при старте.
+// Снимок справочников не изменяется: invalidate() заменяет его целиком, новый снимок загружается при следующем обращении
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ReferenceDictionary {
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Snapshot snapshot;
+
+    @PostConstruct
+    public void load() {
+        List<Genre> genres = jdbcTemplate.query(
+                "SELECT genre_id, genre_name FROM genres ORDER BY genre_id",
+                (rs, rowNum) -> new Genre(rs.getInt("genre_id"), rs.getString("genre_name"))
+        );
+        List<Rating> ratings = jdbcTemplate.query(
+                "SELECT rating_id, rating_name FROM rating ORDER BY rating_id",
+                (rs, rowNum) -> new Rating(rs.getInt("rating_id"), rs.getString("rating_name"))
+        );
+        snapshot = new Snapshot(genres, ratings);
+        log.info("Справочники загружены: {} жанров, {} рейтингов", genres.size(), ratings.size());
+    }
+
+    public void invalidate() {
+        snapshot = null;
+    }
+
+    public List<Genre> findAllGenres() {
+        return current().genres;
+    }
+
+    public Optional<Genre> findGenreById(int genreId) {
+        Genre[] genresById = current().genresById;
+        return genreId >= 0 && genreId < genresById.length ? Optional.ofNullable(genresById[genreId]) : Optional.empty();
+    }
+
+    public List<Rating> findAllMpa() {
+        return current().ratings;
+    }
+
+    public Optional<Rating> findMpaById(int mpaId) {
+        Rating[] ratingsById = current().ratingsById;
+        return mpaId >= 0 && mpaId < ratingsById.length ? Optional.ofNullable(ratingsById[mpaId]) : Optional.empty();
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    load();
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    private static final class Snapshot {
+        private final List<Genre> genres;
+        private final Genre[] genresById;
+        private final List<Rating> ratings;
+        private final Rating[] ratingsById;
+
+        private Snapshot(List<Genre> genres, List<Rating> ratings) {
+            this.genres = List.copyOf(genres);
+            this.ratings = List.copyOf(ratings);
+            genresById = new Genre[genres.isEmpty() ? 0 : genres.get(genres.size() - 1).getId() + 1];
+            genres.forEach(genre -> genresById[genre.getId()] = genre);
+            ratingsById = new Rating[ratings.isEmpty() ? 0 : ratings.get(ratings.size() - 1).getId() + 1];
+            ratings.forEach(rating -> ratingsById[rating.getId()] = rating);
+        }
+    }
+}
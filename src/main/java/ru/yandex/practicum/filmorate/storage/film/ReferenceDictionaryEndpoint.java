@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// Справочники меняются только в обход приложения (миграцией или через консоль H2),
+// поэтому перечитываются по запросу: POST /actuator/dictionary
+@Component
+@Endpoint(id = "dictionary")
+@Slf4j
+@RequiredArgsConstructor
+public class ReferenceDictionaryEndpoint {
+    private final ReferenceDictionary dictionary;
+
+    @ReadOperation
+    public Map<String, Integer> sizes() {
+        return Map.of("genres", dictionary.findAllGenres().size(), "mpa", dictionary.findAllMpa().size());
+    }
+
+    @WriteOperation
+    public void reload() {
+        dictionary.invalidate();
+        log.info("Справочники будут перечитаны при следующем обращении");
+    }
+}
@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Друзья каждого пользователя в виде сжатого битового множества идентификаторов.
+// Битовые множества не изменяются после публикации: запись заменяет множество копией
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class FriendshipIndex {
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Integer, RoaringBitmap> friendsByUser = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void rebuild() {
+        Map<Integer, RoaringBitmap> friends = loadFriends();
+        friendsByUser.clear();
+        friendsByUser.putAll(friends);
+        log.info("Индекс друзей построен: {} пользователей", friends.size());
+    }
+
+    // Сверка индекса с таблицей friendship; при расхождении пользователи пишутся в лог
+    public boolean isConsistent() {
+        Map<Integer, RoaringBitmap> expected = loadFriends();
+        Map<Integer, RoaringBitmap> actual = new HashMap<>(friendsByUser);
+        if (expected.equals(actual)) {
+            return true;
+        }
+        Set<Integer> userIds = new TreeSet<>(expected.keySet());
+        userIds.addAll(actual.keySet());
+        userIds.removeIf(id -> Objects.equals(expected.get(id), actual.get(id)));
+        log.warn("Индекс друзей расходится с базой для пользователей {}", userIds);
+        return false;
+    }
+
+    private Map<Integer, RoaringBitmap> loadFriends() {
+        Map<Integer, RoaringBitmap> friends = new HashMap<>();
+        jdbcTemplate.query(
+                "select user1_id, user2_id from friendship",
+                (RowCallbackHandler) rs -> friends.computeIfAbsent(rs.getInt("user1_id"), id -> new RoaringBitmap())
+                        .add(rs.getInt("user2_id"))
+        );
+        friends.values().forEach(RoaringBitmap::runOptimize);
+        return friends;
+    }
+
+    public void addFriend(int userId, int friendId) {
+        friendsByUser.compute(userId, (id, friends) -> {
+            RoaringBitmap updated = friends == null ? new RoaringBitmap() : friends.clone();
+            updated.add(friendId);
+            return updated;
+        });
+    }
+
+    public void removeFriend(int userId, int friendId) {
+        friendsByUser.computeIfPresent(userId, (id, friends) -> {
+            RoaringBitmap updated = friends.clone();
+            updated.remove(friendId);
+            return updated.isEmpty() ? null : updated;
+        });
+    }
+
+    public int[] commonFriends(int userId, int otherId) {
+        return RoaringBitmap.and(friendsOf(userId), friendsOf(otherId)).toArray();
+    }
+
+    private RoaringBitmap friendsOf(int userId) {
+        return friendsByUser.getOrDefault(userId, EMPTY);
+    }
+}
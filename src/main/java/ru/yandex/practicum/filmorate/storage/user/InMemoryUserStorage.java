@@ -1,36 +1,51 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
-import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CompactIntSet;
 import ru.yandex.practicum.filmorate.model.User;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
 
+// Хранилище безопасно для одновременных запросов: пользователь и его друзья хранятся одной неизменяемой
+// записью, которая заменяется целиком атомарной операцией ConcurrentHashMap, поэтому каждая выданная копия
+// пользователя соответствует одному моменту. Списки пользователей целиком не снимок одного момента:
+// пользователь, измененный во время обхода, попадает в список в прежнем или в новом виде
 @Component("inMemoryUser")
 @Slf4j
 public class InMemoryUserStorage implements UserStorage {
-    private final Map<Integer, User> users = new HashMap<>();
-    @Getter
-    private static Integer id = 0;
-
-    private static Integer getNextId() {
-        return ++id;
-    }
+    private final Map<Integer, Entry> users = new ConcurrentHashMap<>();
+    private final AtomicInteger id = new AtomicInteger();
 
     @Override
     public Collection<User> findAll() {
-        return users.values();
+        return users.values().stream()
+                .sorted(Comparator.comparingInt(Entry::id))
+                .map(Entry::toUser)
+                .collect(Collectors.toList());
+    }
+
+    public List<User> findPage(int after, int limit) {
+        return users.values().stream()
+                .filter(entry -> entry.id() > after)
+                .sorted(Comparator.comparingInt(Entry::id))
+                .limit(limit)
+                .map(Entry::toUser)
+                .collect(Collectors.toList());
     }
 
     @Override
     public User create(User user) {
         checkName(user);
-        user.setId(getNextId());
-        users.put(user.getId(), user);
+        user.setId(id.incrementAndGet());
+        users.put(user.getId(), new Entry(copy(user), new CompactIntSet()));
+        user.setFriends(new CompactIntSet());
         log.info("Пользователь \"'{}'\" создан", user.getName());
 
         return user;
@@ -38,11 +53,9 @@ public class InMemoryUserStorage implements UserStorage {
 
     @Override
     public User put(User user) {
-        if (!users.containsKey(user.getId())) {
-            throw new NotFoundException("Пользователь не найден");
-        }
         checkName(user);
-        users.put(user.getId(), user);
+        Entry entry = update(user.getId(), current -> new Entry(copy(user), current.friends));
+        user.setFriends(CompactIntSet.copyOf(entry.friends));
         log.info("Пользователь \"'{}'\" изменен", user.getName());
 
         return user;
@@ -56,9 +69,86 @@ public class InMemoryUserStorage implements UserStorage {
 
     @Override
     public User findById(Integer id) {
-        if (!users.containsKey(id)) {
+        return entryOf(id).toUser();
+    }
+
+    public void addFriend(Integer userId, Integer friendId) {
+        findById(friendId);
+        update(userId, current -> current.withFriends(friends -> friends.add(friendId)));
+        log.info("Пользователи '{}' и '{}' теперь друзья", userId, friendId);
+    }
+
+    public void removeFriend(Integer userId, Integer friendId) {
+        findById(friendId);
+        update(userId, current -> current.withFriends(friends -> friends.remove(friendId)));
+        log.info("Пользователи '{}' и '{}' больше не друзья", userId, friendId);
+    }
+
+    public Collection<User> getUsersFriends(Integer userId) {
+        return entryOf(userId).friends.stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .map(Entry::toUser)
+                .collect(Collectors.toList());
+    }
+
+    public Collection<User> commonFriends(Integer userId, Integer otherId) {
+        Set<Integer> otherFriends = entryOf(otherId).friends;
+        return entryOf(userId).friends.stream()
+                .filter(otherFriends::contains)
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .map(Entry::toUser)
+                .collect(Collectors.toList());
+    }
+
+    private Entry entryOf(int userId) {
+        Entry entry = users.get(userId);
+        if (entry == null) {
             throw new NotFoundException("Пользователь не найден");
         }
-        return users.get(id);
+        return entry;
+    }
+
+    private Entry update(int userId, UnaryOperator<Entry> change) {
+        Entry entry = users.computeIfPresent(userId, (key, current) -> change.apply(current));
+        if (entry == null) {
+            throw new NotFoundException("Пользователь не найден");
+        }
+        return entry;
+    }
+
+    private static User copy(User user) {
+        User copy = new User(user.getEmail(), user.getLogin(), user.getName(), user.getBirthday());
+        copy.setId(user.getId());
+        return copy;
+    }
+
+    // Ни пользователь, ни множество друзей записи после создания не изменяются.
+    // CompactIntSet хранит значения по возрастанию, поэтому друзья обходятся в порядке идентификаторов
+    private static final class Entry {
+        private final User user;
+        private final CompactIntSet friends;
+
+        private Entry(User user, CompactIntSet friends) {
+            this.user = user;
+            this.friends = friends;
+        }
+
+        private int id() {
+            return user.getId();
+        }
+
+        private Entry withFriends(Consumer<CompactIntSet> change) {
+            CompactIntSet changed = CompactIntSet.copyOf(friends);
+            change.accept(changed);
+            return new Entry(user, changed);
+        }
+
+        private User toUser() {
+            User copy = copy(user);
+            copy.setFriends(CompactIntSet.copyOf(friends));
+            return copy;
+        }
     }
 }
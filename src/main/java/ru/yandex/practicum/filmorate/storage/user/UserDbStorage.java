@@ -3,42 +3,75 @@ package ru.yandex.practicum.filmorate.storage.user;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.metrics.RequestStats;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.FriendshipStatus;
 import ru.yandex.practicum.filmorate.model.User;
 
+import javax.annotation.PostConstruct;
 import java.sql.Date;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 @Component("inDbUser")
 @Slf4j
 @RequiredArgsConstructor
 public class UserDbStorage implements UserStorage {
 
+    private static final String SELECT_USERS_WITH_FRIENDS = "SELECT u.user_id, u.email, u.login, u.user_name, u.birthday, fs.user2_id ";
+    private static final String JOIN_FRIENDS = "LEFT JOIN friendship AS fs ON fs.user1_id = u.user_id ";
+    private static final String INSERT_USER = "insert into users (email, login, user_name, birthday) values (?, ?, ?, ?)";
+    // Заявка получает статус "Подтверждено", если встречная заявка уже есть
+    private static final String MERGE_FRIENDSHIP = "merge into friendship (user1_id, user2_id, status_id) " +
+            "key (user1_id, user2_id) select ?, ?, case when exists " +
+            "(select 1 from friendship where user1_id = ? and user2_id = ?) then ? else ? end";
+    // Версия пользователя растет при изменении его данных или списка его друзей
+    private static final String BUMP_USER_VERSION = "update users set version = version + 1 where user_id = ?";
+    private static final String UPDATE_FRIENDSHIP_STATUS =
+            "update friendship set status_id = ? where user1_id = ? and user2_id = ?";
+    private static final int FRIEND_LOCK_STRIPES = 64;
+
     @Autowired
     private final JdbcTemplate jdbcTemplate;
+    private final FriendshipIndex friendshipIndex;
+    private final Map<FriendshipStatus, Integer> statusIds = new EnumMap<>(FriendshipStatus.class);
+    // Транзакции хранилища идут через тот же DataSource, что и JdbcTemplate
+    private TransactionTemplate transactionTemplate;
+    // Изменение друзей пользователя и обновление индекса друзей выполняются под блокировкой этого
+    // пользователя: иначе добавление и удаление одной пары могли бы зафиксироваться в одном порядке,
+    // а попасть в индекс в другом
+    private final ReentrantLock[] friendLocks = newFriendLocks();
 
     @Override
     public Collection<User> findAll() {
-        Collection<User> users = new ArrayList<>();
-        SqlRowSet userRows = jdbcTemplate.queryForRowSet("select * from users");
-        while (userRows.next()) {
-            log.info("Найден пользователь: {} {}", userRows.getString("user_id"), userRows.getString("user_name"));
-            User user = new User(
-                    userRows.getString("email"),
-                    userRows.getString("login"),
-                    userRows.getString("user_name"),
-                    userRows.getDate("birthday").toLocalDate());
-            user.setId(userRows.getInt("user_id"));
-            users.add(user);
-        }
-        return users;
+        return mapUsersWithFriends(jdbcTemplate.queryForRowSet(
+                SELECT_USERS_WITH_FRIENDS + "FROM users AS u " + JOIN_FRIENDS + "ORDER BY u.user_id, fs.user2_id"
+        ));
+    }
+
+    public List<User> findPage(int after, int limit) {
+        return mapUsersWithFriends(jdbcTemplate.queryForRowSet(
+                SELECT_USERS_WITH_FRIENDS +
+                        "FROM (SELECT * FROM users WHERE user_id > ? ORDER BY user_id LIMIT ?) AS u " + JOIN_FRIENDS +
+                        "ORDER BY u.user_id, fs.user2_id",
+                after,
+                limit
+        ));
     }
 
     @Override
@@ -46,13 +79,8 @@ public class UserDbStorage implements UserStorage {
         checkName(user);
         KeyHolder keyHolder = new GeneratedKeyHolder();
         jdbcTemplate.update(connection -> {
-            PreparedStatement pst = connection.prepareStatement(
-                    "insert into users (email, login, user_name, birthday) values (?, ?, ?, ?)",
-                    Statement.RETURN_GENERATED_KEYS);
-            pst.setString(1, user.getEmail());
-            pst.setString(2, user.getLogin());
-            pst.setString(3, user.getName());
-            pst.setDate(4, Date.valueOf(user.getBirthday()));
+            PreparedStatement pst = connection.prepareStatement(INSERT_USER, Statement.RETURN_GENERATED_KEYS);
+            setUserParameters(pst, user);
             return pst;
         }, keyHolder);
         int id = keyHolder.getKey().intValue();
@@ -60,12 +88,99 @@ public class UserDbStorage implements UserStorage {
         return user;
     }
 
+    private static void setUserParameters(PreparedStatement pst, User user) throws SQLException {
+        pst.setString(1, user.getEmail());
+        pst.setString(2, user.getLogin());
+        pst.setString(3, user.getName());
+        pst.setDate(4, Date.valueOf(user.getBirthday()));
+    }
+
+    // Массовая загрузка части пользователей одним пакетным запросом в транзакции,
+    // идентификаторы берутся из сгенерированных ключей
+    public int[] importUsers(List<User> users) {
+        users.forEach(this::checkName);
+        return transactionTemplate.execute(status -> jdbcTemplate.execute((ConnectionCallback<int[]>) connection -> {
+            try (PreparedStatement pst = connection.prepareStatement(INSERT_USER, Statement.RETURN_GENERATED_KEYS)) {
+                for (User user : users) {
+                    setUserParameters(pst, user);
+                    pst.addBatch();
+                }
+                pst.executeBatch();
+                int[] keys = new int[users.size()];
+                int count = 0;
+                try (ResultSet rs = pst.getGeneratedKeys()) {
+                    while (rs.next()) {
+                        keys[count++] = rs.getInt(1);
+                    }
+                }
+                if (count != keys.length) {
+                    throw new IllegalStateException("Получено " + count + " ключей для " + keys.length + " пользователей");
+                }
+                return keys;
+            }
+        }));
+    }
+
+    // Массовая загрузка части заявок в друзья одной транзакцией с теми же правилами, что и addFriend.
+    // Строки всех пользователей части блокируются в порядке возрастания id. Для каждой заявки
+    // возвращается 1, если оба пользователя существуют, и 0, если кого-то из них нет
+    public int[] importFriends(List<Friendship> friendships) {
+        int[] found = new int[friendships.size()];
+        Set<Integer> requesters = friendships.stream().map(Friendship::getUserId).collect(Collectors.toSet());
+        withFriendLocks(requesters, () -> importFriends(friendships, found));
+        return found;
+    }
+
+    private void importFriends(List<Friendship> friendships, int[] found) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Set<Integer> ids = new TreeSet<>();
+            for (Friendship friendship : friendships) {
+                ids.add(friendship.getUserId());
+                ids.add(friendship.getFriendId());
+            }
+            Set<Integer> existing = new HashSet<>(jdbcTemplate.queryForList(
+                    "select user_id from users where user_id in (" +
+                            String.join(", ", Collections.nCopies(ids.size(), "?")) + ") order by user_id for update",
+                    Integer.class,
+                    ids.toArray()
+            ));
+            List<Object[]> requests = new ArrayList<>(friendships.size());
+            List<Object[]> confirmations = new ArrayList<>(friendships.size());
+            Set<Integer> changed = new TreeSet<>();
+            for (int i = 0; i < found.length; i++) {
+                int userId = friendships.get(i).getUserId();
+                int friendId = friendships.get(i).getFriendId();
+                if (existing.contains(userId) && existing.contains(friendId)) {
+                    found[i] = 1;
+                    requests.add(new Object[]{userId, friendId, friendId, userId,
+                            statusIds.get(FriendshipStatus.CONFIRMED), statusIds.get(FriendshipStatus.REQUESTED)});
+                    confirmations.add(new Object[]{statusIds.get(FriendshipStatus.CONFIRMED), friendId, userId});
+                    changed.add(userId);
+                }
+            }
+            // Встречные заявки внутри части видят друг друга: пакет выполняется по порядку,
+            // а подтверждения записываются после всех заявок
+            if (!requests.isEmpty()) {
+                jdbcTemplate.batchUpdate(MERGE_FRIENDSHIP, requests);
+                jdbcTemplate.batchUpdate(UPDATE_FRIENDSHIP_STATUS, confirmations);
+                jdbcTemplate.batchUpdate(BUMP_USER_VERSION,
+                        changed.stream().map(id -> new Object[]{id}).collect(Collectors.toList()));
+            }
+        });
+        for (int i = 0; i < found.length; i++) {
+            if (found[i] > 0) {
+                friendshipIndex.addFriend(friendships.get(i).getUserId(), friendships.get(i).getFriendId());
+            }
+        }
+    }
+
     @Override
     public User put(User user) {
         checkName(user);
         findById(user.getId());
         jdbcTemplate.update(
-                "update users set email = ?, login = ?, user_name = ?, birthday = ? where user_id = ?",
+                "update users set email = ?, login = ?, user_name = ?, birthday = ?, " +
+                        "version = version + 1 where user_id = ?",
                 user.getEmail(),
                 user.getLogin(),
                 user.getName(),
@@ -77,141 +192,208 @@ public class UserDbStorage implements UserStorage {
 
     @Override
     public User findById(Integer id) {
-        SqlRowSet userRows = jdbcTemplate.queryForRowSet("select * from users where user_id = ?", id);
-        if (userRows.next()) {
-            log.info("Найден пользователь: {} {}", userRows.getString("user_id"), userRows.getString("user_name"));
-            User user = new User(
-                    userRows.getString("email"),
-                    userRows.getString("login"),
-                    userRows.getString("user_name"),
-                    userRows.getDate("birthday").toLocalDate());
-            user.setId(userRows.getInt("user_id"));
-            return user;
+        List<User> users = mapUsersWithFriends(jdbcTemplate.queryForRowSet(
+                SELECT_USERS_WITH_FRIENDS + "FROM users AS u " + JOIN_FRIENDS + "WHERE u.user_id = ?",
+                id
+        ));
+        if (!users.isEmpty()) {
+            return users.get(0);
         } else {
             log.info("Пользователь с идентификатором {} не найден.", id);
             throw new NotFoundException("Пользователь не найден");
         }
     }
 
+    // Идентификаторы статусов дружбы читаются один раз при старте по названиям из FriendshipStatus
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        jdbcTemplate.query(
+                "select status_id, status_name from friendship_status",
+                (RowCallbackHandler) rs -> {
+                    for (FriendshipStatus status : FriendshipStatus.values()) {
+                        if (status.toString().equals(rs.getString("status_name"))) {
+                            statusIds.put(status, rs.getInt("status_id"));
+                        }
+                    }
+                }
+        );
+        for (FriendshipStatus status : FriendshipStatus.values()) {
+            if (!statusIds.containsKey(status)) {
+                throw new IllegalStateException("В таблице friendship_status нет статуса '" + status + "'");
+            }
+        }
+    }
+
+    // Заявка в друзья записывается одной транзакцией. Строки обоих пользователей блокируются
+    // в порядке возрастания id, поэтому встречные заявки выполняются по очереди и не создают
+    // несогласованных строк. Если встречная заявка уже есть, обе строки получают статус "Подтверждено"
     public void addFriend(Integer userId, Integer friendId) {
-        User user = findById(userId);
-        User friend = findById(friendId);
-
-        Set<Integer> friends = user.getFriends();
-        friends.add(friendId);
-        user.setFriends(friends);
-
-        SqlRowSet userRows = jdbcTemplate.queryForRowSet(
-                "select * from friendship where (user1_id = ? and user2_id = ?) or (user1_id = ? and user2_id = ?)",
-                userId,
-                friendId,
-                friendId,
-                userId);
-        if (userRows.next()) {
-            friends = friend.getFriends();
-            friends.add(userId);
-            friend.setFriends(friends);
-
-            SqlRowSet friendshipStatus = jdbcTemplate.queryForRowSet("select * from friendship_status where status_name = ?", "Подтверждено");
-            if (friendshipStatus.next()) {
-                jdbcTemplate.update(
-                        "delete from friendship where friendship_id = ?",
-                        userRows.getInt("friendship_id")
-                );
+        withFriendLocks(List.of(userId), () -> {
+            transactionTemplate.executeWithoutResult(status -> {
+                lockUsers(userId, friendId);
                 jdbcTemplate.update(
-                        "insert into friendship (user1_id, user2_id, status_id) values (?, ?, ?), (?, ?, ?)",
+                        MERGE_FRIENDSHIP,
                         userId,
                         friendId,
-                        friendshipStatus.getInt("status_id"),
                         friendId,
                         userId,
-                        friendshipStatus.getInt("status_id")
+                        statusIds.get(FriendshipStatus.CONFIRMED),
+                        statusIds.get(FriendshipStatus.REQUESTED)
                 );
-            }
-        } else {
-            SqlRowSet friendshipStatus = jdbcTemplate.queryForRowSet("select * from friendship_status where status_name = ?", "Отправлен запрос");
-            if (friendshipStatus.next()) {
                 jdbcTemplate.update(
-                        "insert into friendship (user1_id, user2_id, status_id) values (?, ?, ?)",
-                        userId,
+                        UPDATE_FRIENDSHIP_STATUS,
+                        statusIds.get(FriendshipStatus.CONFIRMED),
                         friendId,
-                        friendshipStatus.getInt("status_id")
+                        userId
                 );
-            }
-        }
-        log.info("Пользователи '{}' и '{}' теперь друзья", user.getName(), friend.getName());
+                jdbcTemplate.update(BUMP_USER_VERSION, userId);
+            });
+            // Индекс обновляется только после фиксации транзакции
+            friendshipIndex.addFriend(userId, friendId);
+        });
+        log.info("Пользователь {} добавил в друзья пользователя {}", userId, friendId);
     }
 
+    // Удаление из друзей: встречная заявка, если она есть, возвращается в статус "Отправлен запрос"
     public void removeFriend(Integer userId, Integer friendId) {
-        User user = findById(userId);
-        User friend = findById(friendId);
-
-        Set<Integer> friends = user.getFriends();
-        friends.remove(friendId);
-        user.setFriends(friends);
-
-        SqlRowSet userRows = jdbcTemplate.queryForRowSet(
-                "select * from friendship where user1_id = ? and user2_id = ?",
-                userId,
-                friendId);
-        if (userRows.next()) {
-            jdbcTemplate.update(
-                    "delete from friendship where user1_id = ? and user2_id = ?",
-                    userId,
-                    friendId
-            );
-            SqlRowSet friendRows = jdbcTemplate.queryForRowSet(
-                    "select * from friendship where user1_id = ? and user2_id = ?",
-                    friendId,
-                    userId);
-            if (friendRows.next()) {
-                SqlRowSet friendshipStatus = jdbcTemplate.queryForRowSet("select * from friendship_status where status_name = ?", "Отправлен запрос");
-                if (friendshipStatus.next()) {
+        withFriendLocks(List.of(userId), () -> {
+            transactionTemplate.executeWithoutResult(status -> {
+                lockUsers(userId, friendId);
+                int deleted = jdbcTemplate.update(
+                        "delete from friendship where user1_id = ? and user2_id = ?",
+                        userId,
+                        friendId
+                );
+                if (deleted > 0) {
                     jdbcTemplate.update(
-                            "update friendship set status_id = ? where user1_id = ? and user2_id = ?",
-                            friendshipStatus.getInt("status_id"),
+                            UPDATE_FRIENDSHIP_STATUS,
+                            statusIds.get(FriendshipStatus.REQUESTED),
                             friendId,
                             userId
                     );
+                    jdbcTemplate.update(BUMP_USER_VERSION, userId);
                 }
+            });
+            friendshipIndex.removeFriend(userId, friendId);
+        });
+        log.info("Пользователь {} удалил из друзей пользователя {}", userId, friendId);
+    }
+
+    // Блокировки берутся в порядке номеров, поэтому массовая загрузка и одиночные заявки
+    // не могут ждать друг друга по кругу
+    private void withFriendLocks(Collection<Integer> userIds, Runnable action) {
+        int[] stripes = userIds.stream()
+                .mapToInt(id -> Math.floorMod(id, FRIEND_LOCK_STRIPES))
+                .sorted()
+                .distinct()
+                .toArray();
+        for (int stripe : stripes) {
+            friendLocks[stripe].lock();
+        }
+        try {
+            action.run();
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                friendLocks[stripes[i]].unlock();
             }
         }
-        log.info("Пользователи '{}' и '{}' больше не друзья", user.getName(), friend.getName());
     }
 
-    public Collection<User> commonFriends(Integer userId, Integer otherId) {
-        findById(userId);
-        findById(otherId);
-        List<User> common = new ArrayList<>();
-
-        SqlRowSet commonRows = jdbcTemplate.queryForRowSet(
-                "SELECT f1.USER2_ID FROM FRIENDSHIP AS f1 INNER JOIN FRIENDSHIP AS f2 " +
-                        "ON f1.USER2_ID = f2.USER2_ID WHERE f1.USER1_ID = ? AND f2.USER1_ID = ?",
-                userId,
-                otherId
-        );
-        while (commonRows.next()) {
-            common.add(findById(commonRows.getInt("USER2_ID")));
+    private static ReentrantLock[] newFriendLocks() {
+        ReentrantLock[] locks = new ReentrantLock[FRIEND_LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
         }
+        return locks;
+    }
 
-        return common;
+    // Блокирует строки пользователей до конца транзакции; если кого-то нет, выбрасывает NotFoundException
+    private void lockUsers(int userId, int friendId) {
+        List<Integer> found = jdbcTemplate.queryForList(
+                "select user_id from users where user_id in (?, ?) order by user_id for update",
+                Integer.class,
+                Math.min(userId, friendId),
+                Math.max(userId, friendId)
+        );
+        for (int id : new int[]{userId, friendId}) {
+            if (!found.contains(id)) {
+                log.info("Пользователь с идентификатором {} не найден.", id);
+                throw new NotFoundException("Пользователь не найден");
+            }
+        }
     }
 
-    public Collection<User> getUsersFriends(Integer userId) {
-        findById(userId);
-        List<User> friends = new ArrayList<>();
+    public OptionalLong findVersion(int id) {
+        List<Long> versions = jdbcTemplate.queryForList(
+                "select version from users where user_id = ?", Long.class, id);
+        return versions.isEmpty() ? OptionalLong.empty() : OptionalLong.of(versions.get(0));
+    }
 
-        SqlRowSet friendsRows = jdbcTemplate.queryForRowSet(
-                "SELECT USER2_ID FROM FRIENDSHIP WHERE USER1_ID = ?",
+    // Версии друзей пользователя по возрастанию id, без загрузки самих друзей и их списков друзей
+    public Map<Integer, Long> findFriendVersions(int userId) {
+        Map<Integer, Long> versions = new LinkedHashMap<>();
+        jdbcTemplate.query(
+                "select u.user_id, u.version from friendship AS f INNER JOIN users AS u ON u.user_id = f.user2_id " +
+                        "where f.user1_id = ? order by u.user_id",
+                (RowCallbackHandler) rs -> versions.put(rs.getInt("user_id"), rs.getLong("version")),
                 userId
         );
-        while (friendsRows.next()) {
-            friends.add(findById(friendsRows.getInt("USER2_ID")));
+        return versions;
+    }
+
+    public Collection<User> commonFriends(Integer userId, Integer otherId) {
+        int[] commonIds = friendshipIndex.commonFriends(userId, otherId);
+        if (commonIds.length == 0) {
+            findById(userId);
+            findById(otherId);
+            return new ArrayList<>();
         }
+        // Идентификаторы передаются одним параметром-массивом: текст запроса не зависит от их числа,
+        // а H2 ищет пользователей по первичному ключу так же, как для IN со списком
+        return mapUsersWithFriends(jdbcTemplate.queryForRowSet(
+                SELECT_USERS_WITH_FRIENDS + "FROM users AS u " + JOIN_FRIENDS +
+                        "WHERE u.user_id = ANY(?) ORDER BY u.user_id, fs.user2_id",
+                (Object) Arrays.stream(commonIds).boxed().toArray(Integer[]::new)
+        ));
+    }
 
+    public Collection<User> getUsersFriends(Integer userId) {
+        List<User> friends = mapUsersWithFriends(jdbcTemplate.queryForRowSet(
+                SELECT_USERS_WITH_FRIENDS + "FROM friendship AS f INNER JOIN users AS u ON u.user_id = f.user2_id " + JOIN_FRIENDS +
+                        "WHERE f.user1_id = ? ORDER BY u.user_id, fs.user2_id",
+                userId
+        ));
+        if (friends.isEmpty()) {
+            findById(userId);
+        }
         return friends;
     }
 
+    // Строки отсортированы по user_id: на каждого друга пользователя приходится отдельная строка
+    private List<User> mapUsersWithFriends(SqlRowSet userRows) {
+        List<User> users = new ArrayList<>();
+        User user = null;
+        while (userRows.next()) {
+            int id = userRows.getInt("user_id");
+            if (user == null || user.getId() != id) {
+                user = new User(
+                        userRows.getString("email"),
+                        userRows.getString("login"),
+                        userRows.getString("user_name"),
+                        userRows.getDate("birthday").toLocalDate());
+                user.setId(id);
+                users.add(user);
+            }
+            int friendId = userRows.getInt("user2_id");
+            if (!userRows.wasNull()) {
+                user.getFriends().add(friendId);
+            }
+        }
+        RequestStats.rowsRead(users.size());
+        return users;
+    }
+
     private void checkName(User user) {
         if (user.getName() == null || user.getName().isBlank()) {
             user.setName(user.getLogin());
@@ -1,3 +0,0 @@
-INSERT  INTO genres (genre_name) VALUES ('Комедия'), ('Драма'), ('Мультфильм'), ('Триллер'), ('Документальный'),('Боевик');
-INSERT  INTO rating (rating_name) VALUES ('G'), ('PG'), ('PG-13'), ('R'), ('NC-17');
-INSERT  INTO friendship_status (status_name) VALUES ('Отправлен запрос'), ('Подтверждено');
@@ -0,0 +1,61 @@
+-- Схема на момент перехода на Flyway. До этого schema.sql пересоздавал таблицы при каждом запуске,
+-- поэтому существующая база совпадает с ней, и скрипт только досоздает недостающее
+CREATE TABLE IF NOT EXISTS users
+(user_id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+user_name VARCHAR(200),
+login VARCHAR(50),
+email varchar(100),
+birthday date,
+version BIGINT DEFAULT 0 NOT NULL);
+
+CREATE TABLE IF NOT EXISTS films
+(film_id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+film_name VARCHAR(200),
+description VARCHAR(200),
+release_date DATE,
+duration INT,
+version BIGINT DEFAULT 0 NOT NULL);
+
+CREATE TABLE IF NOT EXISTS rating(
+rating_id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+rating_name VARCHAR(10));
+
+CREATE TABLE IF NOT EXISTS films_rating
+(film_id INT NOT NULL PRIMARY KEY REFERENCES films(film_id),
+rating_id INTEGER REFERENCES rating(rating_id));
+
+CREATE TABLE IF NOT EXISTS genres(
+genre_id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+genre_name VARCHAR);
+
+CREATE TABLE IF NOT EXISTS films_genres
+(film_id INT NOT NULL REFERENCES films(film_id),
+genre_id INTEGER NOT NULL REFERENCES genres(genre_id),
+PRIMARY KEY (film_id, genre_id));
+
+CREATE TABLE IF NOT EXISTS films_likes(
+film_id INTEGER NOT NULL REFERENCES films(film_id),
+user_id INTEGER NOT NULL REFERENCES users(user_id),
+PRIMARY KEY (film_id, user_id)
+);
+
+CREATE INDEX IF NOT EXISTS films_likes_user_idx ON films_likes(user_id, film_id);
+
+CREATE TABLE IF NOT EXISTS friendship_status(
+status_id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+status_name VARCHAR(100));
+
+CREATE TABLE IF NOT EXISTS friendship(
+friendship_id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+user1_id INTEGER REFERENCES users(user_id),
+user2_id INTEGER REFERENCES users(user_id),
+status_id INTEGER REFERENCES friendship_status(status_id),
+UNIQUE (user1_id, user2_id)
+);
+
+CREATE INDEX IF NOT EXISTS friendship_user2_idx ON friendship(user2_id, user1_id);
+
+MERGE INTO genres (genre_name) KEY (genre_name)
+VALUES ('Комедия'), ('Драма'), ('Мультфильм'), ('Триллер'), ('Документальный'), ('Боевик');
+MERGE INTO rating (rating_name) KEY (rating_name) VALUES ('G'), ('PG'), ('PG-13'), ('R'), ('NC-17');
+MERGE INTO friendship_status (status_name) KEY (status_name) VALUES ('Отправлен запрос'), ('Подтверждено');
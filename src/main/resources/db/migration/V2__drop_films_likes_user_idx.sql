@@ -0,0 +1,2 @@
+-- Лайки пользователя ни один запрос не ищет: индекс только замедлял вставку лайков
+DROP INDEX IF EXISTS films_likes_user_idx;
@@ -1,5 +1,8 @@
 package ru.yandex.practicum.filmorate;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -7,27 +10,69 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.exception.IncorrectParameterException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.metrics.RequestStats;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmView;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.FriendshipStatus;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeWriteBehind;
+import ru.yandex.practicum.filmorate.storage.film.PopularityLeaderboard;
+import ru.yandex.practicum.filmorate.storage.film.ReferenceDictionaryEndpoint;
+import ru.yandex.practicum.filmorate.storage.user.FriendshipIndex;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
+import java.io.IOException;
+import java.sql.Statement;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
-@SpringBootTest
+// Маленькие части массовой загрузки, чтобы один запрос проходил через несколько транзакций
+@SpringBootTest(properties = "filmorate.import.chunk-size=2")
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 class FilmorateApplicationTests {
     private final UserDbStorage userStorage;
     private User user1;
     private User user2;
     private final FilmDbStorage filmStorage;
+    private final JdbcTemplate jdbcTemplate;
+    private final PopularityLeaderboard leaderboard;
+    private final FriendshipIndex friendshipIndex;
+    private final ReferenceDictionaryEndpoint dictionaryEndpoint;
+    private final FilmCache filmCache;
+    private final MeterRegistry meterRegistry;
+    private final FilmService filmService;
+    private final UserService userService;
+    private final ObjectMapper objectMapper;
     private Film film1;
     private Film film2;
 
@@ -53,6 +98,39 @@ class FilmorateApplicationTests {
         Assertions.assertEquals(filmStorage.findAll().size(), 2);
     }
 
+    @Test
+    void shouldReturnFilmsAndUsersPageByPage() {
+        filmStorage.like(film2, user1.getId());
+        userStorage.addFriend(user2.getId(), user1.getId());
+
+        List<Film> firstFilms = filmStorage.findPage(0, 1);
+        Assertions.assertEquals(List.of(film1.getId()), firstFilms.stream().map(Film::getId).collect(Collectors.toList()));
+        List<Film> nextFilms = filmStorage.findPage(firstFilms.get(0).getId(), 10);
+        Assertions.assertEquals(1, nextFilms.size());
+        Assertions.assertEquals(Set.of(user1.getId()), nextFilms.get(0).getLikes());
+        Assertions.assertTrue(filmStorage.findPage(film2.getId(), 10).isEmpty());
+
+        List<User> users = userStorage.findPage(user1.getId(), 10);
+        Assertions.assertEquals(List.of(user2), users);
+        Assertions.assertEquals(Set.of(user1.getId()), users.get(0).getFriends());
+    }
+
+    @Test
+    void shouldExportFilmsWithGenresAndLikes() {
+        film2.setGenres(new HashSet<>(Set.of(new Genre(1, null), new Genre(6, null))));
+        filmStorage.put(film2);
+        filmStorage.like(film2, user1.getId());
+        filmStorage.like(film2, user2.getId());
+
+        List<Film> exported = new ArrayList<>();
+        filmStorage.exportAll(exported::add);
+
+        Assertions.assertEquals(List.of(film1.getId(), film2.getId()), exported.stream().map(Film::getId).collect(Collectors.toList()));
+        Assertions.assertEquals(Set.of(new Genre(1, "Комедия"), new Genre(6, "Боевик")), exported.get(1).getGenres());
+        Assertions.assertEquals(Set.of(user1.getId(), user2.getId()), exported.get(1).getLikes());
+        Assertions.assertTrue(exported.get(0).getLikes().isEmpty());
+    }
+
     @Test
     public void shouldReturnUserById() {
         Optional<User> userOptional = userStorage.findUserById(1);
@@ -152,6 +230,115 @@ class FilmorateApplicationTests {
         Assertions.assertFalse(userStorage.getUsersFriends(user2.getId()).contains(user1));
     }
 
+    @Test
+    void shouldLoadFriendsWithTheirFriendsInOneQuery() {
+        User user3 = userStorage.create(new User("test3@test.ru", "test3", "test3_user", LocalDate.of(1990, 3, 3)));
+        userStorage.addFriend(user1.getId(), user3.getId());
+        userStorage.addFriend(user2.getId(), user3.getId());
+        userStorage.addFriend(user3.getId(), user1.getId());
+
+        long queries = countQueries(() -> {
+            List<User> friends = List.copyOf(userStorage.getUsersFriends(user1.getId()));
+            Assertions.assertEquals(List.of(user3), friends);
+            Assertions.assertEquals(Set.of(user1.getId()), friends.get(0).getFriends());
+            List<User> common = List.copyOf(userStorage.commonFriends(user1.getId(), user2.getId()));
+            Assertions.assertEquals(List.of(user3), common);
+            Assertions.assertEquals(Set.of(user1.getId()), common.get(0).getFriends());
+        });
+
+        Assertions.assertEquals(2, queries);
+        Assertions.assertEquals(Set.of(user3.getId()), userStorage.findById(user1.getId()).getFriends());
+    }
+
+    @Test
+    void shouldConfirmFriendshipOnSimultaneousMutualRequests() throws Exception {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            users.add(userStorage.create(new User("mutual" + i + "@test.ru", "mutual" + i, null, LocalDate.of(1990, 1, 1))));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < users.size(); i += 2) {
+                int first = users.get(i).getId();
+                int second = users.get(i + 1).getId();
+                CyclicBarrier barrier = new CyclicBarrier(2);
+                Future<?> forward = executor.submit(() -> {
+                    barrier.await();
+                    userStorage.addFriend(first, second);
+                    return null;
+                });
+                Future<?> backward = executor.submit(() -> {
+                    barrier.await();
+                    userStorage.addFriend(second, first);
+                    return null;
+                });
+                forward.get(10, TimeUnit.SECONDS);
+                backward.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assertions.assertEquals(users.size(), jdbcTemplate.queryForObject(
+                "select count(*) from friendship as f join friendship_status as s on f.status_id = s.status_id " +
+                        "where s.status_name = 'Подтверждено'",
+                Integer.class));
+        Assertions.assertEquals(users.size(), jdbcTemplate.queryForObject("select count(*) from friendship", Integer.class));
+        Assertions.assertEquals(Set.of(users.get(1).getId()), userStorage.findById(users.get(0).getId()).getFriends());
+
+        userStorage.removeFriend(users.get(0).getId(), users.get(1).getId());
+        Assertions.assertEquals("Отправлен запрос", jdbcTemplate.queryForObject(
+                "select s.status_name from friendship as f join friendship_status as s on f.status_id = s.status_id " +
+                        "where f.user1_id = ?",
+                String.class,
+                users.get(1).getId()));
+        Assertions.assertThrows(NotFoundException.class, () -> userStorage.addFriend(user1.getId(), 4242));
+    }
+
+    @Test
+    void shouldKeepCommonFriendsIndexInSyncWithFriendship() {
+        User user3 = userStorage.create(new User("test3@test.ru", "test3", "test3_user", LocalDate.of(1990, 3, 3)));
+        userStorage.addFriend(user1.getId(), user3.getId());
+        userStorage.addFriend(user2.getId(), user3.getId());
+        Assertions.assertEquals(List.of(user3), List.copyOf(userStorage.commonFriends(user1.getId(), user2.getId())));
+
+        userStorage.removeFriend(user2.getId(), user3.getId());
+        Assertions.assertTrue(userStorage.commonFriends(user1.getId(), user2.getId()).isEmpty());
+        Assertions.assertThrows(NotFoundException.class, () -> userStorage.commonFriends(user1.getId(), 42));
+    }
+
+    // Добавление и удаление одной пары вперемешку: индекс друзей должен совпасть с таблицей friendship
+    @Test
+    void shouldKeepFriendshipIndexConsistentUnderConcurrentAddAndRemove() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 50; i++) {
+                CyclicBarrier barrier = new CyclicBarrier(2);
+                Future<?> add = executor.submit(() -> {
+                    barrier.await();
+                    userStorage.addFriend(user1.getId(), user2.getId());
+                    return null;
+                });
+                Future<?> remove = executor.submit(() -> {
+                    barrier.await();
+                    userStorage.removeFriend(user1.getId(), user2.getId());
+                    return null;
+                });
+                add.get(10, TimeUnit.SECONDS);
+                remove.get(10, TimeUnit.SECONDS);
+                Assertions.assertTrue(friendshipIndex.isConsistent());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        jdbcTemplate.update("insert into friendship (user1_id, user2_id, status_id) values (?, ?, 1)",
+                user2.getId(), user1.getId());
+        Assertions.assertFalse(friendshipIndex.isConsistent());
+        friendshipIndex.rebuild();
+        Assertions.assertTrue(friendshipIndex.isConsistent());
+    }
+
     @Test
     void shouldAddRemoveLikesAndReturnPopularFilm() {
         filmStorage.like(film1, user1.getId());
@@ -161,6 +348,388 @@ class FilmorateApplicationTests {
         filmStorage.like(film2, user2.getId());
         Assertions.assertEquals(filmStorage.getMostPopular(2).size(), 2);
         Assertions.assertEquals(filmStorage.getMostPopular(2).get(0).getId(), 2);
+        Assertions.assertThrows(IncorrectParameterException.class, () -> filmService.getMostPopular(-1));
+        Assertions.assertThrows(IncorrectParameterException.class, () -> filmService.popularTag(0, null));
+    }
+
+    @Test
+    void shouldLoadAllFilmsWithConstantNumberOfQueries() {
+        filmStorage.like(film1, user1.getId());
+        long queriesForTwoFilms = countQueries(() -> filmStorage.findAll());
+
+        for (int i = 0; i < 20; i++) {
+            Film film = new Film("film" + i, "description", LocalDate.of(2000, 1, 1), 100);
+            film.setGenres(new HashSet<>(Set.of(new Genre(1, null), new Genre(2, null))));
+            filmStorage.create(film);
+            filmStorage.like(film, user1.getId());
+            filmStorage.like(film, user2.getId());
+        }
+        long queriesForManyFilms = countQueries(() -> Assertions.assertEquals(22, filmStorage.findAll().size()));
+
+        Assertions.assertEquals(3, queriesForTwoFilms);
+        Assertions.assertEquals(queriesForTwoFilms, queriesForManyFilms);
+        Film film = filmStorage.findAll().stream().filter(f -> f.getName().equals("film0")).findFirst().orElseThrow();
+        Assertions.assertEquals(2, film.getGenres().size());
+        Assertions.assertEquals(Set.of(user1.getId(), user2.getId()), film.getLikes());
+    }
+
+    @Test
+    void shouldReturnPopularFilmsFullyLoadedWithConstantNumberOfQueries() {
+        for (int i = 0; i < 10; i++) {
+            Film film = new Film("film" + i, "description", LocalDate.of(2000, 1, 1), 100);
+            film.setGenres(new HashSet<>(Set.of(new Genre(3, null))));
+            filmStorage.create(film);
+        }
+        filmStorage.like(film2, user1.getId());
+        filmStorage.like(film2, user2.getId());
+        filmStorage.like(film1, user1.getId());
+
+        long queries = countQueries(() -> {
+            List<Film> popular = filmStorage.getMostPopular(12);
+            Assertions.assertEquals(12, popular.size());
+            Assertions.assertEquals(film2.getId(), popular.get(0).getId());
+            Assertions.assertEquals(Set.of(user1.getId(), user2.getId()), popular.get(0).getLikes());
+            Assertions.assertEquals(film1.getId(), popular.get(1).getId());
+            Assertions.assertEquals(Set.of(new Genre(3, "Мультфильм")), popular.get(2).getGenres());
+        });
+
+        Assertions.assertEquals(3, queries);
     }
 
-}
\ No newline at end of file
+    @Test
+    void shouldCountLikesWithoutLoadingThem() {
+        filmStorage.like(film1, user1.getId());
+        filmStorage.like(film1, user2.getId());
+        filmStorage.like(film2, user2.getId());
+
+        long queries = countQueries(() -> {
+            List<Film> films = new ArrayList<>(filmStorage.findAll(FilmView.COUNT));
+            Assertions.assertEquals(2, films.get(0).getLikeCount());
+            Assertions.assertNull(films.get(0).getLikes());
+            Assertions.assertEquals(1, filmStorage.getMostPopular(2, FilmView.COUNT).get(1).getLikeCount());
+            Assertions.assertEquals(2, filmStorage.findPage(0, 1, FilmView.COUNT).get(0).getLikeCount());
+        });
+        Assertions.assertEquals(6, queries);
+        Long likeQueries = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.query_statistics " +
+                        "WHERE sql_statement LIKE 'select film_id, user_id from films_likes%'",
+                Long.class);
+        Assertions.assertEquals(0, likeQueries);
+
+        Film counted = filmStorage.findById(film1.getId(), FilmView.COUNT);
+        Assertions.assertEquals(2, counted.getLikeCount());
+        Assertions.assertNull(counted.getLikes());
+        Assertions.assertEquals(Set.of(user1.getId(), user2.getId()), filmStorage.findById(film1.getId()).getLikes());
+        Assertions.assertEquals(2, filmStorage.findById(film1.getId(), FilmView.COUNT).getLikeCount());
+        Assertions.assertNull(filmStorage.findById(film1.getId()).getLikeCount());
+    }
+
+    @Test
+    void shouldIgnoreRepeatedLikesAndFriendRequests() {
+        filmStorage.like(film1, user1.getId());
+        filmStorage.like(film1, user1.getId());
+        Assertions.assertEquals(1, jdbcTemplate.queryForObject("select count(*) from films_likes", Integer.class));
+        Assertions.assertTrue(leaderboard.isConsistent());
+
+        userStorage.addFriend(user1.getId(), user2.getId());
+        userStorage.addFriend(user2.getId(), user1.getId());
+        userStorage.addFriend(user1.getId(), user2.getId());
+        Assertions.assertEquals(2, jdbcTemplate.queryForObject("select count(*) from friendship", Integer.class));
+    }
+
+    @Test
+    void shouldServeGenresAndMpaFromDictionary() {
+        long queries = countQueries(() -> {
+            Assertions.assertEquals(6, filmStorage.findAllGenres().size());
+            Assertions.assertEquals("Драма", filmStorage.findGenreById(2).getName());
+            Assertions.assertEquals(5, filmStorage.findAllMpa().size());
+            Assertions.assertEquals("PG-13", filmStorage.findMpaById(3).getName());
+            Assertions.assertThrows(NotFoundException.class, () -> filmStorage.findGenreById(42));
+        });
+        Assertions.assertEquals(0, queries);
+
+        jdbcTemplate.update("insert into genres (genre_name) values (?)", "Ужасы");
+        Assertions.assertEquals(6, filmStorage.findAllGenres().size());
+        Assertions.assertEquals(Map.of("genres", 6, "mpa", 5), dictionaryEndpoint.sizes());
+        dictionaryEndpoint.reload();
+        Assertions.assertEquals(new Genre(7, "Ужасы"), filmStorage.findGenreById(7));
+    }
+
+    @Test
+    void shouldServeRepeatedFilmReadsFromCache() {
+        filmStorage.findById(film1.getId());
+        long queries = countQueries(() -> filmStorage.findById(film1.getId()));
+        Assertions.assertEquals(0, queries);
+        Assertions.assertEquals(1, filmCache.getHits());
+
+        filmStorage.findById(film1.getId()).getLikes().add(42);
+        filmStorage.like(filmStorage.findById(film1.getId()), user1.getId());
+        Assertions.assertEquals(Set.of(user1.getId()), filmStorage.findById(film1.getId()).getLikes());
+
+        film1.setName("new name");
+        filmStorage.put(film1);
+        Assertions.assertEquals("new name", filmStorage.findById(film1.getId()).getName());
+    }
+
+    @Test
+    void shouldEvictFilmsByWeight() {
+        FilmCache cache = new FilmCache(3);
+        film1.getLikes().add(user1.getId());
+        cache.put(film1, cache.stamp(film1.getId()));
+        cache.put(film2, cache.stamp(film2.getId()));
+        Assertions.assertNotNull(cache.get(film1.getId()));
+        Assertions.assertNotNull(cache.get(film2.getId()));
+        Assertions.assertEquals(3, cache.weight());
+
+        Film film3 = new Film("film3", "description", LocalDate.of(2000, 1, 1), 100);
+        film3.setId(3);
+        cache.put(film3, cache.stamp(film3.getId()));
+        Assertions.assertEquals(1, cache.getEvictions());
+        Assertions.assertNull(cache.get(film1.getId()));
+        Assertions.assertNotNull(cache.get(film2.getId()));
+        Assertions.assertNotNull(cache.get(film3.getId()));
+
+        long stamp = cache.stamp(film3.getId());
+        cache.invalidate(film3.getId());
+        cache.put(film3, stamp);
+        Assertions.assertNull(cache.get(film3.getId()));
+    }
+
+    @Test
+    void shouldKeepLeaderboardConsistentWithLikesTable() {
+        filmStorage.like(film1, user1.getId());
+        filmStorage.like(film1, user2.getId());
+        filmStorage.like(film2, user2.getId());
+        filmStorage.dislike(film1, user1.getId());
+        filmStorage.dislike(film2, user1.getId());
+        Assertions.assertTrue(leaderboard.isConsistent());
+        Assertions.assertEquals(List.of(film1.getId(), film2.getId()), leaderboard.top(10));
+
+        jdbcTemplate.update("insert into films_likes (film_id, user_id) values (?, ?)", film2.getId(), user1.getId());
+        Assertions.assertFalse(leaderboard.isConsistent());
+        leaderboard.rebuild();
+        Assertions.assertTrue(leaderboard.isConsistent());
+        Assertions.assertEquals(List.of(film2.getId()), leaderboard.top(1));
+    }
+
+    @Test
+    void shouldCoalesceAndBatchDeferredLikes() {
+        LikeWriteBehind writeBehind = new LikeWriteBehind(jdbcTemplate, leaderboard, filmCache, true, 3, 3, 60_000);
+        writeBehind.like(film1.getId(), user1.getId());
+        writeBehind.like(film1.getId(), user2.getId());
+        writeBehind.dislike(film1.getId(), user2.getId());
+        writeBehind.like(film2.getId(), user1.getId());
+        Assertions.assertEquals(3, writeBehind.pendingCount());
+        Assertions.assertEquals(0, jdbcTemplate.queryForObject("select count(*) from films_likes", Integer.class));
+
+        // Очередь заполнена: вызывающий поток записывает накопленное и только потом добавляет событие
+        writeBehind.like(film2.getId(), user2.getId());
+        Assertions.assertEquals(1, writeBehind.pendingCount());
+        Assertions.assertEquals(2, jdbcTemplate.queryForObject("select count(*) from films_likes", Integer.class));
+
+        writeBehind.dislike(film1.getId(), user1.getId());
+        writeBehind.like(film1.getId(), user2.getId());
+        Assertions.assertEquals(3, writeBehind.flush());
+        Assertions.assertEquals(0, writeBehind.flush());
+        Assertions.assertEquals(Set.of(user2.getId()), filmStorage.findById(film1.getId()).getLikes());
+        Assertions.assertEquals(Set.of(user1.getId(), user2.getId()), filmStorage.findById(film2.getId()).getLikes());
+        Assertions.assertTrue(leaderboard.isConsistent());
+        Assertions.assertEquals(List.of(film2.getId(), film1.getId()), leaderboard.top(2));
+    }
+
+    @Test
+    void shouldRequeueDeferredLikesWhenBatchFails() {
+        filmStorage.like(film2, user1.getId());
+        AtomicBoolean failDislikes = new AtomicBoolean(true);
+        JdbcTemplate failingTemplate = new JdbcTemplate(jdbcTemplate.getDataSource()) {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                if (failDislikes.get() && sql.startsWith("delete from films_likes")) {
+                    throw new DataAccessResourceFailureException("Сбой записи пакета");
+                }
+                return super.batchUpdate(sql, batchArgs);
+            }
+        };
+        LikeWriteBehind writeBehind = new LikeWriteBehind(failingTemplate, leaderboard, filmCache, true, 10, 10, 60_000);
+        writeBehind.like(film1.getId(), user1.getId());
+        writeBehind.dislike(film2.getId(), user1.getId());
+        Assertions.assertThrows(DataAccessResourceFailureException.class, writeBehind::flush);
+
+        // Лайк из того же пакета откатился вместе со снятием лайка, пакет вернулся в очередь
+        Assertions.assertEquals(2, writeBehind.pendingCount());
+        Assertions.assertEquals(List.of(film2.getId()), jdbcTemplate.queryForList("select film_id from films_likes", Integer.class));
+        Assertions.assertTrue(leaderboard.isConsistent());
+
+        // Событие, принятое после сбоя, новее возвращенного и побеждает
+        writeBehind.dislike(film1.getId(), user1.getId());
+        failDislikes.set(false);
+        Assertions.assertEquals(2, writeBehind.flush());
+        Assertions.assertEquals(0, jdbcTemplate.queryForObject("select count(*) from films_likes", Integer.class));
+        Assertions.assertTrue(filmStorage.findById(film2.getId()).getLikes().isEmpty());
+        Assertions.assertTrue(leaderboard.isConsistent());
+    }
+
+    // Драйвер не сообщает число измененных строк: количество лайков перечитывается, а не считается по пакету
+    @Test
+    void shouldRecountLikesWhenDriverReturnsNoInfo() {
+        filmStorage.like(film1, user1.getId());
+        JdbcTemplate noInfoTemplate = new JdbcTemplate(jdbcTemplate.getDataSource()) {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                int[] updated = super.batchUpdate(sql, batchArgs);
+                Arrays.fill(updated, Statement.SUCCESS_NO_INFO);
+                return updated;
+            }
+        };
+        LikeWriteBehind writeBehind = new LikeWriteBehind(noInfoTemplate, leaderboard, filmCache, true, 10, 10, 60_000);
+        writeBehind.like(film1.getId(), user1.getId());
+        writeBehind.like(film1.getId(), user2.getId());
+        writeBehind.dislike(film2.getId(), user1.getId());
+        Assertions.assertEquals(3, writeBehind.flush());
+
+        Assertions.assertTrue(leaderboard.isConsistent());
+        Assertions.assertEquals(List.of(film1.getId(), film2.getId()), leaderboard.top(2));
+        Assertions.assertEquals(Set.of(user1.getId(), user2.getId()), filmStorage.findById(film1.getId()).getLikes());
+    }
+
+    @Test
+    void shouldTimeStorageMethodsAndCountStatements() {
+        filmStorage.findAll();
+        Assertions.assertThrows(NotFoundException.class, () -> userStorage.findById(42));
+
+        Timer findAll = meterRegistry.find("filmorate.method")
+                .tags("class", "FilmDbStorage", "method", "findAll", "exception", "none")
+                .timer();
+        Assertions.assertNotNull(findAll);
+        Assertions.assertEquals(1, findAll.count());
+        Assertions.assertNotNull(meterRegistry.find("filmorate.method")
+                .tags("class", "UserDbStorage", "method", "findById", "exception", "NotFoundException")
+                .timer());
+
+        RequestStats stats = RequestStats.start();
+        filmStorage.findAll();
+        RequestStats.finish();
+        Assertions.assertEquals(3, stats.getStatements());
+        Assertions.assertEquals(2, stats.getRows());
+    }
+
+    @Test
+    void shouldChangeTagsOnlyWhenFilmsOrFriendsChange() {
+        String filmTag = filmService.filmTag(film1.getId(), null);
+        String popularTag = filmService.popularTag(10, "count");
+        Assertions.assertEquals(filmTag, filmService.filmTag(film1.getId(), null));
+        Assertions.assertNotEquals(filmTag, filmService.filmTag(film1.getId(), "count"));
+        Assertions.assertNull(filmService.filmTag(42, null));
+
+        filmStorage.like(film1, user1.getId());
+        String likedTag = filmService.filmTag(film1.getId(), null);
+        Assertions.assertNotEquals(filmTag, likedTag);
+        Assertions.assertNotEquals(popularTag, filmService.popularTag(10, "count"));
+        // Повторный лайк ничего не меняет
+        filmStorage.like(film1, user1.getId());
+        Assertions.assertEquals(likedTag, filmService.filmTag(film1.getId(), null));
+        filmStorage.put(film1);
+        Assertions.assertNotEquals(likedTag, filmService.filmTag(film1.getId(), null));
+
+        String friendsTag = userService.friendsTag(user1.getId());
+        userStorage.addFriend(user2.getId(), user1.getId());
+        Assertions.assertEquals(friendsTag, userService.friendsTag(user1.getId()));
+        userStorage.addFriend(user1.getId(), user2.getId());
+        String withFriendTag = userService.friendsTag(user1.getId());
+        Assertions.assertNotEquals(friendsTag, withFriendTag);
+        // Данные друга входят в ответ, поэтому изменение друга меняет тег
+        userStorage.put(user2);
+        Assertions.assertNotEquals(withFriendTag, userService.friendsTag(user1.getId()));
+        Assertions.assertNull(userService.friendsTag(42));
+    }
+
+    @Test
+    void shouldWriteOnlyChangedGenres() {
+        film2.setGenres(new HashSet<>(Set.of(new Genre(1, null), new Genre(2, null), new Genre(42, null))));
+        Assertions.assertEquals(1, countGenreWrites(() -> filmStorage.put(film2)));
+        Assertions.assertEquals(Set.of(new Genre(1, "Комедия"), new Genre(2, "Драма")), film2.getGenres());
+
+        Assertions.assertEquals(0, countGenreWrites(() -> filmStorage.put(film2)));
+
+        film2.setGenres(new HashSet<>(Set.of(new Genre(2, null), new Genre(3, null))));
+        Assertions.assertEquals(2, countGenreWrites(() -> filmStorage.put(film2)));
+        Assertions.assertEquals(Set.of(new Genre(2, "Драма"), new Genre(3, "Мультфильм")), film2.getGenres());
+        Assertions.assertEquals(film2.getGenres(), filmStorage.findById(film2.getId()).getGenres());
+    }
+
+    @Test
+    void shouldImportFilmsUsersLikesAndFriendsInChunks() throws IOException {
+        ImportResult users = userService.importUsers(objectMapper.readerFor(User.class).readValues(
+                "[{\"email\":\"a@test.ru\",\"login\":\"a\",\"birthday\":\"1990-01-01\"}," +
+                        "{\"email\":\"wrong\",\"login\":\"b\",\"birthday\":\"1990-01-01\"}," +
+                        "{\"email\":\"c@test.ru\",\"login\":\"c\",\"birthday\":\"1990-01-01\"}]"));
+        Assertions.assertEquals(2, users.getImported());
+        Assertions.assertNull(users.getIds().get(1));
+        Assertions.assertEquals(List.of(1), users.getErrors().stream().map(ImportResult.ImportError::getIndex).collect(Collectors.toList()));
+        int userA = users.getIds().get(0);
+        int userC = users.getIds().get(2);
+        Assertions.assertEquals("a", userStorage.findById(userA).getName());
+
+        ImportResult films = filmService.importFilms(objectMapper.readerFor(Film.class).readValues(
+                "{\"name\":\"f1\",\"releaseDate\":\"2000-01-01\",\"duration\":90,\"mpa\":{\"id\":1},\"genres\":[{\"id\":2}]}\n" +
+                        "{\"name\":\"f2\",\"releaseDate\":\"2000-01-01\",\"duration\":90,\"mpa\":{\"id\":42}}\n" +
+                        "{\"name\":\"f3\",\"releaseDate\":\"2000-01-01\",\"duration\":90,\"mpa\":{\"id\":3}}\n" +
+                        "{\"name\":\"f4\",\"releaseDate\":\"2000-01-01\",\"duration\":90,\"mpa\":{\"id\":4}}\n" +
+                        "{\"name\": oops}\n"));
+        Assertions.assertEquals(3, films.getImported());
+        Assertions.assertEquals(List.of(1, 4), films.getErrors().stream().map(ImportResult.ImportError::getIndex).collect(Collectors.toList()));
+        int filmF1 = films.getIds().get(0);
+        Film f1 = filmStorage.findById(filmF1);
+        Assertions.assertEquals("G", f1.getMpa().getName());
+        Assertions.assertEquals(Set.of(new Genre(2, "Драма")), f1.getGenres());
+        Assertions.assertEquals(3, filmStorage.findById(films.getIds().get(2)).getMpa().getId());
+
+        ImportResult likes = filmService.importLikes(objectMapper.readerFor(Like.class).readValues(
+                "[{\"filmId\":" + filmF1 + ",\"userId\":" + userA + "}," +
+                        "{\"filmId\":" + filmF1 + ",\"userId\":" + userA + "}," +
+                        "{\"filmId\":" + filmF1 + ",\"userId\":" + userC + "}," +
+                        "{\"filmId\":" + filmF1 + ",\"userId\":999}]"));
+        Assertions.assertEquals(3, likes.getImported());
+        Assertions.assertEquals(1, likes.getErrors().size());
+        Assertions.assertEquals(Set.of(userA, userC), filmStorage.findById(filmF1).getLikes());
+        Assertions.assertEquals(filmF1, leaderboard.top(1).get(0));
+        Assertions.assertTrue(leaderboard.isConsistent());
+
+        ImportResult friends = userService.importFriends(objectMapper.readerFor(Friendship.class).readValues(
+                "{\"userId\":" + userA + ",\"friendId\":" + userC + "}\n" +
+                        "{\"userId\":" + userC + ",\"friendId\":" + userA + "}\n" +
+                        "{\"userId\":" + userA + ",\"friendId\":999}\n"));
+        Assertions.assertEquals(2, friends.getImported());
+        Assertions.assertEquals(Set.of(userC), userStorage.findById(userA).getFriends());
+        Assertions.assertEquals(2, jdbcTemplate.queryForObject(
+                "select count(*) from friendship f join friendship_status s on f.status_id = s.status_id " +
+                        "where s.status_name = ?", Integer.class, FriendshipStatus.CONFIRMED.toString()));
+        Assertions.assertEquals(List.of(userC), userService.commonFriends(userA, userA).stream().map(User::getId).collect(Collectors.toList()));
+    }
+
+    // Количество пакетных запросов на запись жанров: H2 считает каждую строку пакета отдельно,
+    // поэтому учитываются различные запросы, а не выполнения
+    private long countGenreWrites(Runnable action) {
+        jdbcTemplate.execute("SET QUERY_STATISTICS TRUE");
+        action.run();
+        Long count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.query_statistics " +
+                        "WHERE sql_statement LIKE 'insert into films_genres%' " +
+                        "OR sql_statement LIKE 'delete from films_genres%'",
+                Long.class);
+        jdbcTemplate.execute("SET QUERY_STATISTICS FALSE");
+        return count;
+    }
+
+    private long countQueries(Runnable action) {
+        jdbcTemplate.execute("SET QUERY_STATISTICS TRUE");
+        action.run();
+        Long count = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(execution_count), 0) FROM information_schema.query_statistics " +
+                        "WHERE sql_statement NOT LIKE '%QUERY_STATISTICS%' " +
+                        "AND sql_statement NOT LIKE 'SET %' AND sql_statement NOT LIKE 'CALL %'",
+                Long.class);
+        jdbcTemplate.execute("SET QUERY_STATISTICS FALSE");
+        return count;
+    }
+}
@@ -0,0 +1,77 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+// Смешанная нагрузка: 24 потока запрашивают тяжелый GET /films, 4 потока - легкий GET /genres.
+// У Tomcat 16 потоков. mode=blocking - обработчики в потоках Tomcat, и /genres ждет в очереди
+// за /films; mode=executor - обработчики фильмов в пуле FilmController, потоки Tomcat свободны.
+// Результат - пропускная способность и распределение задержек (p50, p99) каждого эндпоинта.
+// Запуск: mvn -Pbenchmark test-compile exec:exec -Djmh.args="AsyncHandlersBenchmark"
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AsyncHandlersBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class WebState {
+        @Param({"1000"})
+        public int scale;
+        @Param({"blocking", "executor"})
+        public String mode;
+
+        ConfigurableApplicationContext context;
+        HttpClient client;
+        HttpRequest films;
+        HttpRequest genres;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            context = BenchmarkApplication.start(
+                    WebApplicationType.SERVLET,
+                    scale,
+                    "--server.port=0",
+                    "--spring.datasource.url=jdbc:h2:mem:benchmark-async;DB_CLOSE_DELAY=-1",
+                    "--spring.main.banner-mode=off",
+                    "--server.tomcat.threads.max=16",
+                    "--filmorate.async.mode=" + mode,
+                    "--filmorate.async.films.threads=8",
+                    "--filmorate.logging.request-summary.sample-rate=0",
+                    "--logging.level.org.zalando.logbook=OFF"
+            );
+            client = HttpClient.newHttpClient();
+            String baseUrl = BenchmarkApplication.baseUrl(context);
+            films = HttpRequest.newBuilder(URI.create(baseUrl + "/films")).GET().build();
+            genres = HttpRequest.newBuilder(URI.create(baseUrl + "/genres")).GET().build();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            context.close();
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(24)
+    public int films(WebState state) throws IOException, InterruptedException {
+        return state.client.send(state.films, HttpResponse.BodyHandlers.ofByteArray()).statusCode();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public int genres(WebState state) throws IOException, InterruptedException {
+        return state.client.send(state.genres, HttpResponse.BodyHandlers.ofByteArray()).statusCode();
+    }
+}
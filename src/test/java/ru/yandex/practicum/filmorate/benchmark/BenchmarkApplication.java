@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.PopularityLeaderboard;
+import ru.yandex.practicum.filmorate.storage.user.FriendshipIndex;
+
+// Запуск приложения для бенчмарков: контекст с переданными аргументами и синтетическими данными масштаба scale
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(WebApplicationType type, int scale, String... args) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(type)
+                .run(args);
+        new SyntheticDataset(context.getBean(JdbcTemplate.class), scale, 42).seed();
+        context.getBean(PopularityLeaderboard.class).rebuild();
+        context.getBean(FriendshipIndex.class).rebuild();
+        context.getBean(FilmCache.class).invalidateAll();
+        return context;
+    }
+
+    static String baseUrl(ConfigurableApplicationContext context) {
+        return "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+    }
+}
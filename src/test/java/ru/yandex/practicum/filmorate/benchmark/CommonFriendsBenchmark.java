@@ -0,0 +1,89 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.FriendshipIndex;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Общие друзья двух пользователей, у каждого из которых friends друзей, половина из них общие.
+// Пересечение индексом друзей в памяти сравнивается с пересечением запросом к базе;
+// commonFriends - полный путь хранилища: пересечение и загрузка найденных пользователей с их друзьями
+// Запуск: mvn -Pbenchmark test-compile exec:exec -Djmh.args="CommonFriendsBenchmark"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommonFriendsBenchmark {
+    private static final int SCALE = 1000;
+
+    @State(Scope.Benchmark)
+    public static class FriendsState {
+        @Param({"10", "1000", "100000"})
+        public int friends;
+
+        ConfigurableApplicationContext context;
+        JdbcTemplate jdbcTemplate;
+        UserDbStorage userStorage;
+        FriendshipIndex friendshipIndex;
+        int userId;
+        int otherId;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            context = BenchmarkApplication.start(
+                    WebApplicationType.NONE,
+                    SCALE,
+                    "--spring.datasource.url=jdbc:h2:mem:benchmark-friends;DB_CLOSE_DELAY=-1",
+                    "--spring.main.banner-mode=off",
+                    "--logging.level.root=WARN",
+                    "--logging.level.ru.yandex.practicum.filmorate=WARN"
+            );
+            jdbcTemplate = context.getBean(JdbcTemplate.class);
+            userStorage = context.getBean(UserDbStorage.class);
+            friendshipIndex = context.getBean(FriendshipIndex.class);
+
+            userId = SCALE + 1;
+            otherId = SCALE + 2;
+            int first = SCALE + 3;
+            SyntheticDataset dataset = new SyntheticDataset(jdbcTemplate, SCALE, 42);
+            dataset.insertUsers(userId, first + friends / 2 + friends - 1);
+            dataset.insertFriends(userId, first, first + friends - 1);
+            dataset.insertFriends(otherId, first + friends / 2, first + friends / 2 + friends - 1);
+            friendshipIndex.rebuild();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public int[] commonFriendIdsIndex(FriendsState state) {
+        return state.friendshipIndex.commonFriends(state.userId, state.otherId);
+    }
+
+    @Benchmark
+    public List<Integer> commonFriendIdsSql(FriendsState state) {
+        return state.jdbcTemplate.queryForList(
+                "select f1.user2_id from friendship as f1 join friendship as f2 on f1.user2_id = f2.user2_id " +
+                        "where f1.user1_id = ? and f2.user1_id = ?",
+                Integer.class,
+                state.userId,
+                state.otherId
+        );
+    }
+
+    @Benchmark
+    public Collection<User> commonFriends(FriendsState state) {
+        return state.userStorage.commonFriends(state.userId, state.otherId);
+    }
+}
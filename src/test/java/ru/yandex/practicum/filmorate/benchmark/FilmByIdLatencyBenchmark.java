@@ -0,0 +1,82 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Распределение задержек GET /films/{id} (p50, p99 и др.) на файловой базе H2 под нагрузкой из 8 потоков.
+// settings=tuned - настройки пула и H2 из application.properties, h2-defaults - настройки H2 и Hikari по умолчанию
+// (10 соединений, ожидание соединения 30 с).
+// Кэш фильмов отключен, чтобы каждый запрос доходил до базы.
+// Запуск: mvn -Pbenchmark test-compile exec:exec -Djmh.args="FilmByIdLatencyBenchmark -p scale=100000"
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class FilmByIdLatencyBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class FileDbState {
+        @Param({"10000"})
+        public int scale;
+        @Param({"tuned", "h2-defaults"})
+        public String settings;
+
+        Path directory;
+        ConfigurableApplicationContext context;
+        HttpClient client;
+        String baseUrl;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("filmorate-benchmark");
+            String url = "jdbc:h2:file:" + directory.resolve("filmorate");
+            if (settings.equals("tuned")) {
+                url += ";CACHE_SIZE=${filmorate.h2.cache-size-kb};QUERY_CACHE_SIZE=${filmorate.h2.query-cache-size}" +
+                        ";WRITE_DELAY=${filmorate.h2.write-delay-ms};AUTO_COMPACT_FILL_RATE=${filmorate.h2.auto-compact-fill-rate}";
+            }
+            List<String> args = new ArrayList<>(List.of(
+                    "--server.port=0",
+                    "--spring.datasource.url=" + url,
+                    "--spring.main.banner-mode=off",
+                    "--filmorate.cache.films.max-weight=0",
+                    "--filmorate.logging.request-summary.sample-rate=0",
+                    "--logging.level.org.zalando.logbook=OFF"
+            ));
+            if (settings.equals("h2-defaults")) {
+                args.add("--filmorate.db.pool-size=10");
+            }
+            context = BenchmarkApplication.start(WebApplicationType.SERVLET, scale, args.toArray(String[]::new));
+            client = HttpClient.newHttpClient();
+            baseUrl = BenchmarkApplication.baseUrl(context);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            context.close();
+            FileSystemUtils.deleteRecursively(directory);
+        }
+    }
+
+    @Benchmark
+    public int findById(FileDbState state) throws IOException, InterruptedException {
+        int id = 1 + ThreadLocalRandom.current().nextInt(state.scale);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(state.baseUrl + "/films/" + id)).GET().build();
+        return state.client.send(request, HttpResponse.BodyHandlers.ofByteArray()).statusCode();
+    }
+}
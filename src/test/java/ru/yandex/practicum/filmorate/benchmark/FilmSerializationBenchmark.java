@@ -0,0 +1,127 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.yandex.practicum.filmorate.model.CompactIntSet;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// Сериализация ответа GET /films из films фильмов: время CPU на ответ и размер ответа в байтах.
+// mapper=boxed - ObjectMapper без модулей ускорения, лайки пишутся как коллекция Integer (прежнее поведение);
+// reflection - то же, но лайки пишутся сериализатором CompactIntSet; blackbird - плюс BlackbirdModule, как в приложении.
+// compression=gzip - ответ сжимается так же, как при server.compression.enabled (GZIPOutputStream).
+// Размер ответа печатается в конце каждого прогона строкой "Байт в ответе"
+// Запуск: mvn -Pbenchmark test-compile exec:exec -Djmh.args="FilmSerializationBenchmark"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FilmSerializationBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class FilmsState {
+        @Param({"100000"})
+        public int films;
+        @Param({"boxed", "reflection", "blackbird"})
+        public String mapper;
+        @Param({"identity", "gzip"})
+        public String compression;
+
+        List<Film> catalog;
+        ObjectWriter writer;
+        long lastBytes;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json()
+                    .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+            if (mapper.equals("blackbird")) {
+                builder.modulesToInstall(new BlackbirdModule());
+            }
+            ObjectMapper objectMapper = builder.build();
+            if (mapper.equals("boxed")) {
+                objectMapper.addMixIn(CompactIntSet.class, BoxedLikes.class);
+            }
+            writer = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, Film.class));
+            catalog = catalog(films);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            System.out.println("Байт в ответе: " + lastBytes + " (" + mapper + ", " + compression + ")");
+        }
+
+        // Фильмы как в SyntheticDataset: 1-3 жанра, рейтинг и лайки с перекосом в сторону первых фильмов
+        private static List<Film> catalog(int size) {
+            Random random = new Random(42);
+            List<Genre> genres = List.of(new Genre(1, "Комедия"), new Genre(2, "Драма"), new Genre(3, "Мультфильм"),
+                    new Genre(4, "Триллер"), new Genre(5, "Документальный"), new Genre(6, "Боевик"));
+            List<Rating> ratings = List.of(new Rating(1, "G"), new Rating(2, "PG"), new Rating(3, "PG-13"),
+                    new Rating(4, "R"), new Rating(5, "NC-17"));
+            List<Film> catalog = new ArrayList<>(size);
+            for (int id = 1; id <= size; id++) {
+                Film film = new Film("Фильм " + id, "Описание фильма " + id,
+                        LocalDate.of(1950, 1, 1).plusDays(random.nextInt(25_000)), 60 + random.nextInt(120));
+                film.setId(id);
+                film.setMpa(ratings.get(random.nextInt(ratings.size())));
+                Set<Genre> filmGenres = new HashSet<>();
+                for (int i = random.nextInt(3); i >= 0; i--) {
+                    filmGenres.add(genres.get(random.nextInt(genres.size())));
+                }
+                film.setGenres(filmGenres);
+                CompactIntSet likes = new CompactIntSet();
+                int likeCount = (int) (40 / Math.sqrt(id)) + random.nextInt(5);
+                for (int i = 0; i < likeCount; i++) {
+                    likes.add(1 + random.nextInt(size));
+                }
+                film.setLikes(likes);
+                catalog.add(film);
+            }
+            return catalog;
+        }
+    }
+
+    // Отключает сериализатор CompactIntSet: множество пишется стандартным сериализатором коллекций
+    @JsonSerialize(using = JsonSerializer.None.class)
+    private interface BoxedLikes {
+    }
+
+    @Benchmark
+    public long serialize(FilmsState state) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream();
+        OutputStream out = state.compression.equals("gzip") ? new GZIPOutputStream(counter, 8192) : counter;
+        state.writer.writeValue(out, state.catalog);
+        state.lastBytes = counter.count;
+        return counter.count;
+    }
+
+    // Считает байты вместо того, чтобы хранить их: в замер не попадает копирование в буфер
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmView;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.LikeWriteBehind;
+import ru.yandex.practicum.filmorate.storage.film.PopularityLeaderboard;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Запуск: mvn -Pbenchmark test-compile exec:exec -Djmh.args="FilmStorageBenchmark -p scale=10000,100000"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilmStorageBenchmark {
+
+    @Benchmark
+    public Collection<Film> findAll(StorageState state) {
+        return state.filmStorage.findAll();
+    }
+
+    @Benchmark
+    public Collection<Film> findAllLikeCount(StorageState state) {
+        return state.filmStorage.findAll(FilmView.COUNT);
+    }
+
+    @Benchmark
+    public List<Film> findPage(StorageState state) {
+        return state.filmStorage.findPage(state.randomId(), 100);
+    }
+
+    @Benchmark
+    public Film findByIdCached(StorageState state) {
+        return state.filmStorage.findById(state.randomId());
+    }
+
+    @Benchmark
+    public Film findByIdUncached(StorageState state) {
+        int id = state.randomId();
+        state.filmCache.invalidate(id);
+        return state.filmStorage.findById(id);
+    }
+
+    @Benchmark
+    public List<Film> getMostPopular(StorageState state) {
+        return state.filmStorage.getMostPopular(10);
+    }
+
+    @Benchmark
+    public void like(StorageState state) {
+        state.filmStorage.like(film(state.randomId()), state.randomId());
+    }
+
+    @Benchmark
+    public void likeWriteBehind(WriteBehindState writeBehind, StorageState state) {
+        writeBehind.likeWriteBehind.like(state.randomId(), state.randomId());
+    }
+
+    // Отдельный включенный экземпляр отложенной записи поверх того же контекста
+    @State(Scope.Benchmark)
+    public static class WriteBehindState {
+        LikeWriteBehind likeWriteBehind;
+
+        @Setup(Level.Trial)
+        public void setUp(StorageState state) {
+            likeWriteBehind = new LikeWriteBehind(
+                    state.jdbcTemplate,
+                    state.getBean(PopularityLeaderboard.class),
+                    state.getBean(FilmCache.class),
+                    true,
+                    500,
+                    10_000,
+                    100
+            );
+            likeWriteBehind.start();
+        }
+
+        @TearDown(Level.Iteration)
+        public void flush() {
+            likeWriteBehind.flush();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            likeWriteBehind.stop();
+        }
+    }
+
+    private static Film film(int id) {
+        Film film = new Film("Фильм " + id, "", LocalDate.of(2000, 1, 1), 100);
+        film.setId(id);
+        return film;
+    }
+}
@@ -0,0 +1,59 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+// Пропускная способность GET /films через HTTP в зависимости от режима логирования тел Logbook:
+// write-or-error - тела только изменяющих запросов, all - тела всех запросов и ответов.
+// Запуск: mvn -Pbenchmark test-compile exec:exec -Djmh.args="FilmsEndpointBenchmark -p scale=1000,10000"
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilmsEndpointBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class WebState {
+        @Param({"1000"})
+        public int scale;
+        @Param({"write-or-error", "all"})
+        public String bodies;
+
+        ConfigurableApplicationContext context;
+        HttpClient client;
+        HttpRequest findAll;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            context = BenchmarkApplication.start(
+                    WebApplicationType.SERVLET,
+                    scale,
+                    "--server.port=0",
+                    "--spring.datasource.url=jdbc:h2:mem:benchmark-web;DB_CLOSE_DELAY=-1",
+                    "--spring.main.banner-mode=off",
+                    "--filmorate.logging.bodies=" + bodies
+            );
+            client = HttpClient.newHttpClient();
+            findAll = HttpRequest.newBuilder(URI.create(BenchmarkApplication.baseUrl(context) + "/films")).GET().build();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public int findAll(WebState state) throws IOException, InterruptedException {
+        return state.client.send(state.findAll, HttpResponse.BodyHandlers.ofByteArray()).body().length;
+    }
+}
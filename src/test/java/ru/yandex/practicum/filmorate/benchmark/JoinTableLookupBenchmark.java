@@ -0,0 +1,107 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Поиск по таблицам связей при likes лайков (и стольких же дружб) до и после ключей и индексов схемы.
+// schema=before - таблицы связей в прежнем виде: без первичных ключей и уникальности, индексы есть только
+// у внешних ключей, которые H2 создает сам; schema=after - схема после всех миграций db/migration.
+// Запросы - те же поиски, что выполняют FilmDbStorage и UserDbStorage
+// Запуск: mvn -Pbenchmark test-compile exec:exec -Djmh.args="JoinTableLookupBenchmark"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JoinTableLookupBenchmark {
+    private static final String BEFORE_KEYS =
+            "DROP TABLE films_rating; DROP TABLE films_genres; DROP TABLE films_likes; DROP TABLE friendship; " +
+                    "CREATE TABLE films_rating (film_id INT NOT NULL, rating_id INTEGER REFERENCES rating(rating_id)); " +
+                    "CREATE TABLE films_genres (film_id INT NOT NULL, genre_id INTEGER REFERENCES genres(genre_id)); " +
+                    "CREATE TABLE films_likes (like_id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+                    "film_id INTEGER REFERENCES films(film_id), user_id INTEGER REFERENCES users(user_id)); " +
+                    "CREATE TABLE friendship (friendship_id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+                    "user1_id INTEGER REFERENCES users(user_id), user2_id INTEGER REFERENCES users(user_id), " +
+                    "status_id INTEGER REFERENCES friendship_status(status_id))";
+
+    @State(Scope.Benchmark)
+    public static class SchemaState {
+        @Param({"1000000"})
+        public int likes;
+        @Param({"before", "after"})
+        public String schema;
+
+        SingleConnectionDataSource dataSource;
+        JdbcTemplate jdbcTemplate;
+        int scale;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            // Без Spring Boot логирование не настроено, и JdbcTemplate пишет DEBUG на каждый запрос
+            LoggingSystem.get(getClass().getClassLoader()).setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.WARN);
+            dataSource = new SingleConnectionDataSource("jdbc:h2:mem:benchmark-keys-" + schema, "sa", "", true);
+            jdbcTemplate = new JdbcTemplate(dataSource);
+            Flyway.configure().dataSource(dataSource).load().migrate();
+            if (schema.equals("before")) {
+                for (String statement : BEFORE_KEYS.split("; ")) {
+                    jdbcTemplate.execute(statement);
+                }
+            }
+            scale = likes / SyntheticDataset.LIKES_PER_FILM;
+            new SyntheticDataset(jdbcTemplate, scale, 42).seed();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            dataSource.destroy();
+        }
+
+        int randomId() {
+            return 1 + ThreadLocalRandom.current().nextInt(scale);
+        }
+    }
+
+    // Лайки фильма при загрузке фильма по идентификатору
+    @Benchmark
+    public List<Integer> likesOfFilm(SchemaState state) {
+        return state.jdbcTemplate.queryForList(
+                "select user_id from films_likes where film_id = ? order by user_id", Integer.class, state.randomId());
+    }
+
+    // Проверка повторного лайка перед вставкой
+    @Benchmark
+    public Integer likeExists(SchemaState state) {
+        return state.jdbcTemplate.queryForObject(
+                "select count(*) from films_likes where film_id = ? and user_id = ?",
+                Integer.class, state.randomId(), state.randomId());
+    }
+
+    @Benchmark
+    public List<Integer> genresOfFilm(SchemaState state) {
+        return state.jdbcTemplate.queryForList(
+                "select genre_id from films_genres where film_id = ?", Integer.class, state.randomId());
+    }
+
+    // Соединение фильма с рейтингом в запросах фильмов
+    @Benchmark
+    public List<Integer> ratingOfFilm(SchemaState state) {
+        return state.jdbcTemplate.queryForList(
+                "select rating_id from films_rating where film_id = ?", Integer.class, state.randomId());
+    }
+
+    // Встречная заявка при добавлении друга
+    @Benchmark
+    public Integer reverseFriendship(SchemaState state) {
+        return state.jdbcTemplate.queryForObject(
+                "select count(*) from friendship where user1_id = ? and user2_id = ?",
+                Integer.class, state.randomId(), state.randomId());
+    }
+}
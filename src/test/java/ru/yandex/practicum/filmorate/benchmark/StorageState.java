@@ -0,0 +1,54 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Контекст приложения без веб-сервера поверх H2 в памяти, заполненной SyntheticDataset.
+// Масштаб задается параметром scale: -p scale=10000,100000,1000000
+@State(Scope.Benchmark)
+public class StorageState {
+    @Param({"10000"})
+    public int scale;
+
+    ConfigurableApplicationContext context;
+    JdbcTemplate jdbcTemplate;
+    FilmDbStorage filmStorage;
+    UserDbStorage userStorage;
+    FilmCache filmCache;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start(
+                WebApplicationType.NONE,
+                scale,
+                "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--logging.level.ru.yandex.practicum.filmorate=WARN"
+        );
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        filmStorage = context.getBean(FilmDbStorage.class);
+        userStorage = context.getBean(UserDbStorage.class);
+        filmCache = context.getBean(FilmCache.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    int randomId() {
+        return 1 + ThreadLocalRandom.current().nextInt(scale);
+    }
+
+    <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+}
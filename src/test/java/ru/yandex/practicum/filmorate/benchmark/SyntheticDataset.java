@@ -0,0 +1,140 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Генератор синтетических данных для бенчмарков: scale фильмов и scale пользователей,
+// в среднем LIKES_PER_FILM лайков на фильм и FRIENDS_PER_USER друзей на пользователя.
+// Популярность фильмов и пользователей неравномерная: небольшая часть получает большую долю связей
+@Slf4j
+public class SyntheticDataset {
+    static final int LIKES_PER_FILM = 5;
+    static final int FRIENDS_PER_USER = 5;
+    private static final int BATCH_SIZE = 10_000;
+    private static final int GENRES = 6;
+    private static final int RATINGS = 5;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int scale;
+    private final Random random;
+
+    public SyntheticDataset(JdbcTemplate jdbcTemplate, int scale, long seed) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.scale = scale;
+        this.random = new Random(seed);
+    }
+
+    public void seed() {
+        long start = System.currentTimeMillis();
+        insertUsers();
+        insertFilms();
+        insertLikes();
+        insertFriendship();
+        log.warn("Сгенерированы данные для {} фильмов и пользователей за {} мс", scale, System.currentTimeMillis() - start);
+    }
+
+    private void insertUsers() {
+        insertUsers(1, scale);
+    }
+
+    // Пользователи с идентификаторами from..to включительно; следующий созданный получит to + 1
+    public void insertUsers(int from, int to) {
+        Batch batch = new Batch("insert into users (user_id, email, login, user_name, birthday) values (?, ?, ?, ?, ?)");
+        for (int id = from; id <= to; id++) {
+            batch.add(id, "user" + id + "@mail.ru", "user" + id, "Пользователь " + id,
+                    Date.valueOf(LocalDate.of(1960, 1, 1).plusDays(random.nextInt(15_000))));
+        }
+        batch.flush();
+        jdbcTemplate.execute("alter table users alter column user_id restart with " + (to + 1));
+    }
+
+    // Друзья пользователя userId - пользователи с идентификаторами from..to включительно, у которых
+    // еще нет заявок от userId. Строки вставляются без MERGE: на таком пакете MERGE в H2 перебирает
+    // уже вставленные строки того же user1_id, и загрузка 100 тысяч друзей растет квадратично
+    public void insertFriends(int userId, int from, int to) {
+        Batch friendship = new Batch("insert into friendship (user1_id, user2_id, status_id) values (?, ?, 1)");
+        for (int friendId = from; friendId <= to; friendId++) {
+            friendship.add(userId, friendId);
+        }
+        friendship.flush();
+    }
+
+    private void insertFilms() {
+        Batch films = new Batch("insert into films (film_id, film_name, description, release_date, duration) values (?, ?, ?, ?, ?)");
+        Batch ratings = new Batch("insert into films_rating (film_id, rating_id) values (?, ?)");
+        Batch genres = new Batch("insert into films_genres (film_id, genre_id) values (?, ?)");
+        for (int id = 1; id <= scale; id++) {
+            films.add(id, "Фильм " + id, "Описание фильма " + id,
+                    Date.valueOf(LocalDate.of(1950, 1, 1).plusDays(random.nextInt(25_000))), 60 + random.nextInt(120));
+        }
+        films.flush();
+        // Рейтинги и жанры ссылаются на фильмы, поэтому пишутся после всех фильмов
+        for (int id = 1; id <= scale; id++) {
+            ratings.add(id, 1 + random.nextInt(RATINGS));
+            int first = 1 + random.nextInt(GENRES);
+            genres.add(id, first);
+            if (random.nextBoolean()) {
+                genres.add(id, first % GENRES + 1);
+            }
+        }
+        ratings.flush();
+        genres.flush();
+        jdbcTemplate.execute("alter table films alter column film_id restart with " + (scale + 1));
+    }
+
+    private void insertLikes() {
+        Batch likes = new Batch("merge into films_likes (film_id, user_id) key (film_id, user_id) values (?, ?)");
+        for (long i = 0; i < (long) scale * LIKES_PER_FILM; i++) {
+            likes.add(skewedId(), 1 + random.nextInt(scale));
+        }
+        likes.flush();
+    }
+
+    private void insertFriendship() {
+        Batch friendship = new Batch("merge into friendship (user1_id, user2_id, status_id) key (user1_id, user2_id) " +
+                "values (?, ?, 1)");
+        for (long i = 0; i < (long) scale * FRIENDS_PER_USER; i++) {
+            int userId = 1 + random.nextInt(scale);
+            int friendId = skewedId();
+            if (userId != friendId) {
+                friendship.add(userId, friendId);
+            }
+        }
+        friendship.flush();
+    }
+
+    // Квадрат равномерного распределения: идентификаторы с малыми номерами выпадают чаще
+    private int skewedId() {
+        double value = random.nextDouble();
+        return 1 + (int) (value * value * scale);
+    }
+
+    private class Batch {
+        private final String sql;
+        private final List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+
+        Batch(String sql) {
+            this.sql = sql;
+        }
+
+        void add(Object... row) {
+            rows.add(row);
+            if (rows.size() == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate(sql, rows);
+                rows.clear();
+            }
+        }
+    }
+}
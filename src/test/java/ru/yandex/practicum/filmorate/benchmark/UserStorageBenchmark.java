@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+// Сравнение индекса общих друзей с запросом к базе при разном числе друзей - в CommonFriendsBenchmark
+// Запуск: mvn -Pbenchmark test-compile exec:exec -Djmh.args="UserStorageBenchmark -p scale=10000,100000"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserStorageBenchmark {
+
+    @Benchmark
+    public Collection<User> getUsersFriends(StorageState state) {
+        return state.userStorage.getUsersFriends(state.randomId());
+    }
+
+    @Benchmark
+    public Collection<User> commonFriends(StorageState state) {
+        return state.userStorage.commonFriends(state.randomId(), state.randomId());
+    }
+
+    @Benchmark
+    public void addAndRemoveFriend(StorageState state) {
+        int userId = state.randomId();
+        int friendId = state.randomId();
+        state.userStorage.addFriend(userId, friendId);
+        state.userStorage.removeFriend(userId, friendId);
+    }
+}
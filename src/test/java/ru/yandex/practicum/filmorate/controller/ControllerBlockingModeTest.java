@@ -0,0 +1,57 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Режим blocking: обработчики возвращают уже завершенный CompletableFuture, и ответ отправляется
+// синхронно, без асинхронной диспетчеризации
+@SpringBootTest(properties = "filmorate.async.mode=blocking")
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+@DirtiesContext
+class ControllerBlockingModeTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void shouldAnswerWithoutAsyncDispatch() throws Exception {
+        mockMvc.perform(post("/films").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"film\",\"description\":\"test\",\"releaseDate\":\"2000-01-01\",\"duration\":100,\"mpa\":{\"id\":1}}"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(1));
+        mockMvc.perform(post("/users").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"user@test.ru\",\"login\":\"user\",\"birthday\":\"1990-01-01\"}"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isOk());
+
+        mockMvc.perform(put("/films/{id}/like/{userId}", 1, 1))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isOk())
+                .andExpect(content().string(""));
+        mockMvc.perform(get("/films"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(jsonPath("$[0].likes[0]").value(1));
+    }
+
+    @Test
+    void shouldAnswerNotFoundWithoutAsyncDispatch() throws Exception {
+        mockMvc.perform(get("/films/{id}", 9999))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isNotFound());
+    }
+}
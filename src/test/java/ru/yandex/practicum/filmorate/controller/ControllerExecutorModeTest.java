@@ -0,0 +1,94 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.yandex.practicum.filmorate.metrics.RequestStats;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Режим executor с пулом фильмов из одного потока и очередью на одну задачу
+@SpringBootTest(properties = {
+        "filmorate.async.mode=executor",
+        "filmorate.async.films.threads=1",
+        "filmorate.async.films.queue-capacity=1"
+})
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+@DirtiesContext
+class ControllerExecutorModeTest {
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ControllerExecutors executors;
+    @Autowired
+    private FilmService filmService;
+
+    @Test
+    void shouldAnswerNotFoundThrownOnPool() throws Exception {
+        MvcResult result = mockMvc.perform(get("/films/{id}", 9999)).andExpect(request().asyncStarted()).andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isNotFound());
+    }
+
+    // Единственный поток занят, очередь заполнена: запрос отклоняется сразу, без ожидания
+    @Test
+    void shouldAnswerServiceUnavailableWhenQueueIsFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> running = executors.films().run(() -> {
+            started.countDown();
+            await(release);
+        });
+        // Поток пула уже создан другими тестами: задача сначала попадает в очередь, и, пока поток
+        // ее не забрал, очередь занята
+        Assertions.assertTrue(started.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Void> queued = executors.films().run(() -> {
+        });
+        try {
+            mockMvc.perform(get("/films")).andExpect(status().isServiceUnavailable());
+        } finally {
+            release.countDown();
+        }
+        running.get(10, TimeUnit.SECONDS);
+        queued.get(10, TimeUnit.SECONDS);
+    }
+
+    // Запросы к базе, выполненные в потоке пула, учитываются в статистике запроса из потока Tomcat
+    @Test
+    void shouldCountStatementsExecutedOnPool() throws Exception {
+        RequestStats stats = RequestStats.start();
+        String thread;
+        try {
+            thread = executors.films().supply(() -> {
+                filmService.findAll();
+                return Thread.currentThread().getName();
+            }).get(10, TimeUnit.SECONDS);
+        } finally {
+            RequestStats.finish();
+        }
+        Assertions.assertTrue(thread.startsWith("films-handler-"));
+        Assertions.assertTrue(stats.getStatements() > 0);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
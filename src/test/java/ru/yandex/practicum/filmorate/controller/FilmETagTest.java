@@ -0,0 +1,111 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class FilmETagTest {
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private FilmDbStorage filmStorage;
+    @Autowired
+    private UserDbStorage userStorage;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private FilmCache filmCache;
+    private Film film;
+    private User user;
+
+    @BeforeEach
+    void createTestData() {
+        film = filmStorage.create(new Film("test_film", "test1", LocalDate.of(1990, 1, 1), 120));
+        user = userStorage.create(new User("test@test.ru", "test1", "test1_user", LocalDate.of(1990, 1, 1)));
+    }
+
+    @Test
+    void shouldMatchIfNoneMatch() {
+        Assertions.assertTrue(ETags.matches("\"film-1\"", "\"film-1\""));
+        Assertions.assertTrue(ETags.matches("\"film-2\", W/\"film-1\"", "\"film-1\""));
+        Assertions.assertTrue(ETags.matches("*", "\"film-1\""));
+        Assertions.assertFalse(ETags.matches("\"film-2\"", "\"film-1\""));
+        Assertions.assertFalse(ETags.matches("film-1", "\"film-1\""));
+        Assertions.assertFalse(ETags.matches(null, "\"film-1\""));
+        Assertions.assertTrue(ETags.matches("\"film-1\"", "W/\"film-1\""));
+        Assertions.assertTrue(ETags.matches("W/\"film-1\"", "W/\"film-1\""));
+        Assertions.assertFalse(ETags.matches("W/\"film-2\"", "W/\"film-1\""));
+    }
+
+    @Test
+    void shouldAnswerNotModifiedUntilFilmChanges() throws Exception {
+        MockHttpServletResponse first = getFilm(null);
+        String etag = first.getHeader(HttpHeaders.ETAG);
+        Assertions.assertEquals(HttpStatus.OK.value(), first.getStatus());
+        Assertions.assertTrue(etag.startsWith("W/\""));
+
+        MockHttpServletResponse notModified = getFilm(etag);
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED.value(), notModified.getStatus());
+        Assertions.assertEquals(etag, notModified.getHeader(HttpHeaders.ETAG));
+        Assertions.assertEquals("", notModified.getContentAsString());
+
+        filmStorage.like(film, user.getId());
+        MockHttpServletResponse changed = getFilm(etag);
+        Assertions.assertEquals(HttpStatus.OK.value(), changed.getStatus());
+        Assertions.assertNotEquals(etag, changed.getHeader(HttpHeaders.ETAG));
+        Assertions.assertTrue(changed.getContentAsString().contains("\"likes\":[" + user.getId() + "]"));
+    }
+
+    // Изменение уже зафиксировано, а кэш еще не сброшен: фильм из кэша отдается с тегом своей, прежней версии.
+    // После сброса кэша клиент с этим тегом получает новый фильм, а не 304 на устаревшее тело
+    @Test
+    void shouldTagCachedFilmWithItsOwnVersion() throws Exception {
+        String etag = getFilm(null).getHeader(HttpHeaders.ETAG);
+        jdbcTemplate.update("update films set version = version + 1 where film_id = ?", film.getId());
+
+        MockHttpServletResponse cached = getFilm(null);
+        Assertions.assertEquals(HttpStatus.OK.value(), cached.getStatus());
+        Assertions.assertEquals(etag, cached.getHeader(HttpHeaders.ETAG));
+
+        filmCache.invalidate(film.getId());
+        MockHttpServletResponse reloaded = getFilm(etag);
+        Assertions.assertEquals(HttpStatus.OK.value(), reloaded.getStatus());
+        String newEtag = reloaded.getHeader(HttpHeaders.ETAG);
+        Assertions.assertNotEquals(etag, newEtag);
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED.value(), getFilm(newEtag).getStatus());
+    }
+
+    private MockHttpServletResponse getFilm(String ifNoneMatch) throws Exception {
+        MockHttpServletRequestBuilder builder = get("/films/{id}", film.getId());
+        if (ifNoneMatch != null) {
+            builder.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        // В режиме blocking ответ отправляется синхронно, без повторной диспетчеризации
+        return mockMvc.perform(builder).andExpect(request().asyncNotStarted()).andReturn().getResponse();
+    }
+}
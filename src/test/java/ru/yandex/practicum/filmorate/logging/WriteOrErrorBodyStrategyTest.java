@@ -0,0 +1,61 @@
+package ru.yandex.practicum.filmorate.logging;
+
+import org.junit.jupiter.api.Test;
+import org.zalando.logbook.Correlation;
+import org.zalando.logbook.HttpRequest;
+import org.zalando.logbook.HttpResponse;
+import org.zalando.logbook.Sink;
+
+import static org.mockito.Mockito.*;
+
+class WriteOrErrorBodyStrategyTest {
+    private final WriteOrErrorBodyStrategy strategy = new WriteOrErrorBodyStrategy();
+    private final Correlation correlation = mock(Correlation.class);
+    private final Sink sink = mock(Sink.class);
+
+    @Test
+    void shouldDropBodyOfSuccessfulRead() throws Exception {
+        HttpRequest request = request("GET");
+        HttpResponse response = response(200);
+        HttpResponse withoutBody = mock(HttpResponse.class);
+        when(response.withoutBody()).thenReturn(withoutBody);
+
+        strategy.write(correlation, request, response, sink);
+
+        verify(sink).write(correlation, request, withoutBody);
+    }
+
+    // Тело ответа на чтение буферизуется и попадает в лог, если запрос завершился ошибкой
+    @Test
+    void shouldKeepBodyOfFailedRead() throws Exception {
+        HttpRequest request = request("GET");
+        HttpResponse response = response(404);
+
+        strategy.write(correlation, request, response, sink);
+
+        verify(sink).write(correlation, request, response);
+        verify(response, never()).withoutBody();
+    }
+
+    @Test
+    void shouldKeepBodyOfWrite() throws Exception {
+        HttpRequest request = request("POST");
+        HttpResponse response = response(200);
+
+        strategy.write(correlation, request, response, sink);
+
+        verify(sink).write(correlation, request, response);
+    }
+
+    private static HttpRequest request(String method) {
+        HttpRequest request = mock(HttpRequest.class);
+        when(request.getMethod()).thenReturn(method);
+        return request;
+    }
+
+    private static HttpResponse response(int status) {
+        HttpResponse response = mock(HttpResponse.class);
+        when(response.getStatus()).thenReturn(status);
+        return response;
+    }
+}
@@ -0,0 +1,95 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.time.LocalDate;
+import java.util.*;
+
+class CompactIntSetTest {
+    private static final int LIKES = 10_000;
+
+    @Test
+    void shouldBehaveLikeSet() {
+        Set<Integer> set = new CompactIntSet();
+        Assertions.assertTrue(set.add(5));
+        Assertions.assertTrue(set.add(1));
+        Assertions.assertTrue(set.add(3));
+        Assertions.assertFalse(set.add(3));
+        Assertions.assertEquals(List.of(1, 3, 5), new ArrayList<>(set));
+        Assertions.assertTrue(set.remove(3));
+        Assertions.assertFalse(set.contains(3));
+        Assertions.assertEquals(Set.of(1, 5), set);
+        Assertions.assertEquals(Set.of(1, 5).hashCode(), set.hashCode());
+
+        Iterator<Integer> iterator = set.iterator();
+        iterator.next();
+        iterator.remove();
+        Assertions.assertEquals(List.of(5), new ArrayList<>(set));
+    }
+
+    @Test
+    void shouldKeepJsonShapeOfLikes() throws Exception {
+        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+        Film film = new Film("film", "description", LocalDate.of(2000, 1, 1), 100);
+        film.getLikes().add(2);
+        film.getLikes().add(1);
+
+        String json = mapper.writeValueAsString(film);
+        Assertions.assertTrue(json.contains("\"likes\":[1,2]"));
+        Film restored = mapper.readValue(json.replace("\"likes\":[1,2]", "\"likes\":[2,1,2]"), Film.class);
+        Assertions.assertTrue(restored.getLikes() instanceof CompactIntSet);
+        Assertions.assertEquals(Set.of(1, 2), restored.getLikes());
+    }
+
+    @Test
+    void shouldRejectNullLikes() {
+        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+        Assertions.assertThrows(MismatchedInputException.class, () -> mapper.readValue(
+                "{\"name\":\"film\",\"likes\":[1,null]}", Film.class));
+        Assertions.assertThrows(MismatchedInputException.class, () -> mapper.readValue(
+                "{\"login\":\"user\",\"friends\":[1,null]}", User.class));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new CompactIntSet().add(null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CompactIntSet.copyOf(Arrays.asList(1, null)));
+    }
+
+    // Занимаемая память фильма с 10 000 лайков: CompactIntSet против HashSet<Integer>.
+    // Обход графа HashSet из 100 000 лайков в JOL занимал больше 10 секунд, а соотношение от размера не зависит
+    @Test
+    void shouldTakeFarLessMemoryThanHashSet() {
+        Film compact = filmWithLikes();
+        Film boxed = filmWithLikes();
+        Set<Integer> hashSet = new HashSet<>(compact.getLikes());
+        setLikesField(boxed, hashSet);
+
+        long compactBytes = GraphLayout.parseInstance(compact).totalSize();
+        long boxedBytes = GraphLayout.parseInstance(boxed).totalSize();
+        Assertions.assertTrue(compactBytes * 5 < boxedBytes, () -> String.format(
+                "Фильм с %d лайками: CompactIntSet %d байт, HashSet %d байт", LIKES, compactBytes, boxedBytes));
+    }
+
+    private Film filmWithLikes() {
+        Film film = new Film("film", "description", LocalDate.of(2000, 1, 1), 100);
+        // Множество строится одной сортировкой, а не вставкой значений в случайном порядке по одному
+        List<Integer> likes = new ArrayList<>(LIKES);
+        Random random = new Random(42);
+        for (int i = 0; i < LIKES; i++) {
+            likes.add(1_000 + random.nextInt(10_000_000));
+        }
+        film.setLikes(CompactIntSet.copyOf(likes));
+        return film;
+    }
+
+    private void setLikesField(Film film, Set<Integer> likes) {
+        try {
+            java.lang.reflect.Field field = Film.class.getDeclaredField("likes");
+            field.setAccessible(true);
+            field.set(film, likes);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+class InMemoryStorageConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int PER_THREAD = 500;
+
+    @Test
+    void shouldCreateFilmsAndUsersWithUniqueIdsFromManyThreads() throws Exception {
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        InMemoryUserStorage userStorage = new InMemoryUserStorage();
+
+        runConcurrently(i -> {
+            filmStorage.create(new Film("film" + i, "description", LocalDate.of(2000, 1, 1), 100));
+            userStorage.create(new User("user" + i + "@test.ru", "user" + i, null, LocalDate.of(1990, 1, 1)));
+            filmStorage.findAll();
+        });
+
+        Set<Integer> filmIds = filmStorage.findAll().stream().map(Film::getId).collect(Collectors.toSet());
+        Set<Integer> userIds = userStorage.findAll().stream().map(User::getId).collect(Collectors.toSet());
+        Assertions.assertEquals(THREADS * PER_THREAD, filmIds.size());
+        Assertions.assertEquals(THREADS * PER_THREAD, userIds.size());
+        Assertions.assertEquals(THREADS * PER_THREAD, filmIds.stream().mapToInt(Integer::intValue).max().orElse(0));
+    }
+
+    @Test
+    void shouldNotLoseLikesAndFriendsFromManyThreads() throws Exception {
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        InMemoryUserStorage userStorage = new InMemoryUserStorage();
+        Film film = filmStorage.create(new Film("film", "description", LocalDate.of(2000, 1, 1), 100));
+        User owner = userStorage.create(new User("owner@test.ru", "owner", null, LocalDate.of(1990, 1, 1)));
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < THREADS * PER_THREAD; i++) {
+            users.add(userStorage.create(new User("user" + i + "@test.ru", "user" + i, null, LocalDate.of(1990, 1, 1))));
+        }
+
+        runConcurrently(i -> {
+            User user = users.get(i);
+            filmStorage.like(filmStorage.findById(film.getId()), user.getId());
+            userStorage.addFriend(owner.getId(), user.getId());
+            userStorage.addFriend(user.getId(), owner.getId());
+            filmStorage.getMostPopular(10);
+        });
+
+        Assertions.assertEquals(THREADS * PER_THREAD, filmStorage.findById(film.getId()).getLikes().size());
+        Assertions.assertEquals(THREADS * PER_THREAD, userStorage.getUsersFriends(owner.getId()).size());
+        Assertions.assertEquals(
+                List.of(owner),
+                List.copyOf(userStorage.commonFriends(users.get(0).getId(), users.get(1).getId()))
+        );
+    }
+
+    // Один поток добавляет лайки и друзей по возрастанию идентификаторов. Каждая копия фильма или пользователя
+    // соответствует одному моменту, поэтому читатель всегда видит ровно первые n значений, без пропусков
+    @Test
+    void shouldReturnPointInTimeCopiesWhileLikesAndFriendsChange() throws Exception {
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        InMemoryUserStorage userStorage = new InMemoryUserStorage();
+        Film film = filmStorage.create(new Film("film", "description", LocalDate.of(2000, 1, 1), 100));
+        User owner = userStorage.create(new User("owner@test.ru", "owner", null, LocalDate.of(1990, 1, 1)));
+        int count = THREADS * PER_THREAD;
+        for (int i = 0; i < count; i++) {
+            userStorage.create(new User("user" + i + "@test.ru", "user" + i, null, LocalDate.of(1990, 1, 1)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (int userId = owner.getId() + 1; userId <= owner.getId() + count; userId++) {
+                    filmStorage.like(filmStorage.findById(film.getId()), userId);
+                    userStorage.addFriend(owner.getId(), userId);
+                }
+            });
+            Future<?> reader = executor.submit(() -> {
+                while (!writer.isDone()) {
+                    assertPrefix(owner.getId(), filmStorage.findById(film.getId()).getLikes());
+                    assertPrefix(owner.getId(), filmStorage.findAll().iterator().next().getLikes());
+                    assertPrefix(owner.getId(), userStorage.findById(owner.getId()).getFriends());
+                }
+            });
+            writer.get(30, TimeUnit.SECONDS);
+            reader.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(count, filmStorage.findById(film.getId()).getLikes().size());
+        Assertions.assertEquals(count, userStorage.findById(owner.getId()).getFriends().size());
+    }
+
+    private static void assertPrefix(int ownerId, Set<Integer> ids) {
+        List<Integer> expected = IntStream.rangeClosed(ownerId + 1, ownerId + ids.size()).boxed()
+                .collect(Collectors.toList());
+        Assertions.assertEquals(expected, List.copyOf(ids));
+    }
+
+    private void runConcurrently(IntTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < PER_THREAD; i++) {
+                    task.run(thread * PER_THREAD + i);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+    }
+
+    private interface IntTask {
+        void run(int i);
+    }
+}
@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.FilmView;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Планы запросов к фильмам: поиск по идентификатору и по списку идентификаторов идет по первичному ключу
+@JdbcTest
+class FilmQueryPlanTest {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldFindFilmByPrimaryKey() {
+        assertThat(explain(FilmDbStorage.FIND_FILM, 1))
+                .contains("PRIMARY_KEY")
+                .contains("F.FILM_ID = ?1")
+                .doesNotContain("FILMS.tableScan");
+        assertThat(explain(FilmDbStorage.FIND_FILM_WITH_LIKE_COUNT, 1))
+                .contains("PRIMARY_KEY")
+                .doesNotContain("FILMS.tableScan");
+    }
+
+    @Test
+    void shouldFindSeveralFilmsByPrimaryKey() {
+        assertThat(explain(FilmDbStorage.findFilms(FilmView.FULL, 3), 1, 2, 3))
+                .contains("PRIMARY_KEY")
+                .contains("F.FILM_ID IN(?1, ?2, ?3)")
+                .doesNotContain("FILMS.tableScan");
+        assertThat(explain(FilmDbStorage.findFilms(FilmView.COUNT, 2), 1, 2))
+                .contains("PRIMARY_KEY")
+                .doesNotContain("FILMS.tableScan");
+    }
+
+    @Test
+    void shouldListFilmsInPrimaryKeyOrder() {
+        // Сортировка по первичному ключу не требует отдельного шага сортировки
+        assertThat(explain(FilmDbStorage.FIND_ALL_FILMS))
+                .contains("PRIMARY_KEY")
+                .contains("index sorted");
+    }
+
+    private String explain(String sql, Object... args) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class, args);
+    }
+}